@@ -0,0 +1,274 @@
+package DBMS;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// A B+ tree over the values of one column. Leaves map each distinct value to
+// the ordinals of its records and are chained left to right for range scans.
+// Every node is stored in its own file through FileManager and read through a
+// bounded cache; changed nodes stay in memory until they are evicted or flush
+// writes them and the tree header. Keys are ordered as Page.compareValues
+// orders them.
+public class BPlusTree implements Serializable {
+
+	private static final long serialVersionUID = -9208241897900181835L;
+
+	static class Node implements Serializable {
+		private static final long serialVersionUID = -1526944751350550626L;
+		boolean leaf;
+		ArrayList<String> keys = new ArrayList<String>();
+		// internal nodes: child node numbers, one more than keys
+		ArrayList<Integer> children = new ArrayList<Integer>();
+		// leaves: the ordinals of each key and the next leaf, -1 for the last
+		ArrayList<CompressedBitmap> values = new ArrayList<CompressedBitmap>();
+		int next = -1;
+	}
+
+	private static class Split {
+		String key;
+		int right;
+
+		Split(String key, int right) {
+			this.key = key;
+			this.right = right;
+		}
+	}
+
+	final String tableName;
+	final String columnName;
+	private final int order;
+	private int root;
+	private int nodeCount;
+	private transient LinkedHashMap<Integer, Node> cache;
+	private transient HashSet<Integer> dirty;
+
+	public BPlusTree(String tableName, String columnName, int order) {
+		this.tableName = tableName;
+		this.columnName = columnName;
+		this.order = Math.max(order, 3);
+		Node leaf = new Node();
+		leaf.leaf = true;
+		this.root = allocate(leaf);
+	}
+
+	public void insert(String key, int ordinal) {
+		Split s = insert(root, key, ordinal);
+		if (s != null) {
+			Node r = new Node();
+			r.keys.add(s.key);
+			r.children.add(root);
+			r.children.add(s.right);
+			root = allocate(r);
+		}
+	}
+
+	private Split insert(int id, String key, int ordinal) {
+		Node n = node(id);
+		if (n.leaf) {
+			int pos = lowerBound(n.keys, key);
+			if (pos < n.keys.size() && compareKeys(n.keys.get(pos), key) == 0) {
+				n.values.get(pos).add(ordinal);
+			} else {
+				CompressedBitmap ordinals = new CompressedBitmap();
+				ordinals.add(ordinal);
+				n.keys.add(pos, key);
+				n.values.add(pos, ordinals);
+			}
+			if (n.keys.size() < order) {
+				touch(id, n);
+				return null;
+			}
+			int mid = n.keys.size() / 2;
+			Node right = new Node();
+			right.leaf = true;
+			right.keys.addAll(n.keys.subList(mid, n.keys.size()));
+			right.values.addAll(n.values.subList(mid, n.values.size()));
+			n.keys.subList(mid, n.keys.size()).clear();
+			n.values.subList(mid, n.values.size()).clear();
+			right.next = n.next;
+			int rightId = allocate(right);
+			// allocating may have written and evicted n, so it is touched only
+			// once every change to it is made
+			n.next = rightId;
+			touch(id, n);
+			return new Split(right.keys.get(0), rightId);
+		}
+
+		int child = upperBound(n.keys, key);
+		Split s = insert(n.children.get(child), key, ordinal);
+		if (s == null) {
+			return null;
+		}
+		n.keys.add(child, s.key);
+		n.children.add(child + 1, s.right);
+		if (n.keys.size() < order) {
+			touch(id, n);
+			return null;
+		}
+		int mid = n.keys.size() / 2;
+		Node right = new Node();
+		String up = n.keys.get(mid);
+		right.keys.addAll(n.keys.subList(mid + 1, n.keys.size()));
+		right.children.addAll(n.children.subList(mid + 1, n.children.size()));
+		n.keys.subList(mid, n.keys.size()).clear();
+		n.children.subList(mid + 1, n.children.size()).clear();
+		int rightId = allocate(right);
+		touch(id, n);
+		return new Split(up, rightId);
+	}
+
+	// Ordinals of the records whose value lies between low and high; a null
+	// bound leaves that side of the range open.
+	public CompressedBitmap range(String low, boolean lowInclusive, String high, boolean highInclusive) {
+		Node n = node(root);
+		while (!n.leaf) {
+			int child = 0;
+			if (low != null) {
+				// leftmost child that may hold a value equal to low
+				while (child < n.keys.size() && Page.compareValues(n.keys.get(child), low) < 0) {
+					child++;
+				}
+			}
+			n = node(n.children.get(child));
+		}
+		ArrayList<CompressedBitmap> matches = new ArrayList<CompressedBitmap>();
+		while (n != null) {
+			for (int i = 0; i < n.keys.size(); i++) {
+				String key = n.keys.get(i);
+				if (high != null) {
+					int c = Page.compareValues(key, high);
+					if (c > 0 || (c == 0 && !highInclusive)) {
+						return CompressedBitmap.or(matches);
+					}
+				}
+				if (Page.inRange(key, low, lowInclusive, high, highInclusive)) {
+					matches.add(n.values.get(i));
+				}
+			}
+			n = n.next == -1 ? null : node(n.next);
+		}
+		return CompressedBitmap.or(matches);
+	}
+
+	public CompressedBitmap get(String key) {
+		return range(key, true, key, true);
+	}
+
+	// Rough heap size of the cached nodes, for the IndexRegistry memory budget.
+	public long sizeInBytes() {
+		return 128 + cache().size() * (64 + 96L * order);
+	}
+
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	public int getCachedNodeCount() {
+		return cache().size();
+	}
+
+	// Writes the changed nodes, then the tree header that points at them.
+	public boolean flush() {
+		for (Integer id : new ArrayList<Integer>(dirty())) {
+			if (!FileManager.storeTreeNode(tableName, columnName, id, cache().get(id))) {
+				return false;
+			}
+			dirty.remove(id);
+		}
+		evict();
+		return FileManager.storeTableTree(tableName, columnName, this);
+	}
+
+	// Numbers first by value, then everything else as strings; values that are
+	// numerically equal but spelled differently stay distinct keys.
+	private static int compareKeys(String a, String b) {
+		int c = Page.compareValues(a, b);
+		return c != 0 ? c : a.compareTo(b);
+	}
+
+	private static int lowerBound(ArrayList<String> keys, String key) {
+		int lo = 0, hi = keys.size();
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (compareKeys(keys.get(mid), key) < 0) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	private static int upperBound(ArrayList<String> keys, String key) {
+		int lo = 0, hi = keys.size();
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (compareKeys(keys.get(mid), key) <= 0) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	private int allocate(Node n) {
+		int id = nodeCount++;
+		touch(id, n);
+		return id;
+	}
+
+	private Node node(int id) {
+		Node n = cache().get(id);
+		if (n == null) {
+			n = FileManager.loadTreeNode(tableName, columnName, id);
+			if (n == null) {
+				throw new IllegalStateException("Missing node " + id + " of the B+ tree on " + tableName + "."
+						+ columnName);
+			}
+			cache.put(id, n);
+			evict();
+		}
+		return n;
+	}
+
+	private void touch(int id, Node n) {
+		cache().put(id, n);
+		dirty().add(id);
+		evict();
+	}
+
+	// Drops the least recently used nodes beyond DBApp.treeNodeCacheSize, writing
+	// changed ones first; a node that cannot be written stays cached.
+	private void evict() {
+		Iterator<Map.Entry<Integer, Node>> it = cache().entrySet().iterator();
+		while (cache.size() > DBApp.treeNodeCacheSize && it.hasNext()) {
+			Map.Entry<Integer, Node> e = it.next();
+			if (dirty().contains(e.getKey())) {
+				if (!FileManager.storeTreeNode(tableName, columnName, e.getKey(), e.getValue())) {
+					continue;
+				}
+				dirty.remove(e.getKey());
+			}
+			it.remove();
+		}
+	}
+
+	private LinkedHashMap<Integer, Node> cache() {
+		if (cache == null) {
+			cache = new LinkedHashMap<Integer, Node>(16, 0.75f, true);
+		}
+		return cache;
+	}
+
+	private HashSet<Integer> dirty() {
+		if (dirty == null) {
+			dirty = new HashSet<Integer>();
+		}
+		return dirty;
+	}
+}
@@ -0,0 +1,309 @@
+package DBMS;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+// Bit-sliced index over a numeric column. Values are kept as fixed-point
+// integers with scale decimal digits, less an offset at or below the smallest
+// value seen, and slice i holds the records whose stored value has bit i set.
+// Ranges and aggregates are answered with bitmap operations and popcounts alone.
+public class BitSlicedIndex implements Serializable {
+    private static final long serialVersionUID = -521265450765734942L;
+    private int scale;
+    private long offset;
+    private ArrayList<CompressedBitmap> slices;
+    // records holding a numeric value
+    private CompressedBitmap exists;
+    // whether every record inserted so far was numeric
+    private boolean complete;
+    // whether every numeric value is stored without rounding
+    private boolean exact;
+
+    public BitSlicedIndex(int scale) {
+        this.scale = scale;
+        this.slices = new ArrayList<>();
+        this.exists = new CompressedBitmap();
+        this.complete = true;
+        this.exact = true;
+    }
+
+    // Digits after the decimal point a value needs, as a scale that keeps it exact.
+    public static int scaleOf(String value) {
+        try {
+            return Math.max(new BigDecimal(value).stripTrailingZeros().scale(), 0);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // A value with more digits than the scale widens it, up to
+    // DBApp.bitSliceMaxScale; past that the value is rounded and the index is no
+    // longer exact.
+    public void insert(String value, int ordinal) {
+        BigDecimal v = toDecimal(value, 0);
+        if (v == null) {
+            complete = false;
+            return;
+        }
+        int needed = scaleOf(value);
+        if (needed > scale && scale < DBApp.bitSliceMaxScale) {
+            rescale(Math.min(needed, DBApp.bitSliceMaxScale));
+        }
+        if (needed > scale) {
+            exact = false;
+        }
+        long scaled;
+        try {
+            scaled = v.movePointRight(scale).setScale(0, RoundingMode.HALF_UP).longValueExact();
+        } catch (ArithmeticException e) {
+            exact = false;
+            return;
+        }
+        if (exists.isEmpty()) {
+            offset = scaled;
+        } else if (scaled < offset) {
+            // leave as much room below the new minimum as the values already span,
+            // so values arriving in descending order re-encode only log N times
+            long room = Math.max(offset - scaled, slices.size() < 62 ? 1L << slices.size() : Long.MAX_VALUE);
+            long newOffset = scaled - room;
+            if (newOffset > scaled || !reencode(newOffset, 1)) {
+                // the room would overflow; fall back to the value itself
+                if (!reencode(scaled, 1)) {
+                    exact = false;
+                    return;
+                }
+            }
+        }
+        long d = scaled - offset;
+        for (int i = 0; d != 0; i++, d >>>= 1) {
+            if ((d & 1) != 0) {
+                while (slices.size() <= i) {
+                    slices.add(new CompressedBitmap());
+                }
+                slices.get(i).add(ordinal);
+            }
+        }
+        exists.add(ordinal);
+    }
+
+    // Rough heap size of the index, for the IndexRegistry memory budget.
+    public long sizeInBytes() {
+        long res = 64 + exists.sizeInBytes();
+        for (CompressedBitmap slice : slices) {
+            res += slice.sizeInBytes();
+        }
+        return res;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public boolean isExact() {
+        return exact;
+    }
+
+    // Whether range can place a bound exactly as Page.compareValues orders it:
+    // plain decimals and non-numbers can, numbers only Double parses cannot.
+    public static boolean accepts(String bound) {
+        return bound == null || Page.toNumber(bound) == null || toDecimal(bound, 0) != null;
+    }
+
+    // Records whose value lies between low and high; a null bound leaves that
+    // side open. Non-numeric bounds order after every number, as in
+    // Page.compareValues.
+    public CompressedBitmap range(String low, boolean lowInclusive, String high, boolean highInclusive) {
+        CompressedBitmap res = exists;
+        if (low != null && Page.toNumber(low) == null) {
+            return new CompressedBitmap();
+        }
+        if (high != null && Page.toNumber(high) == null) {
+            high = null;
+        }
+        if (low != null) {
+            BigDecimal v = toDecimal(low);
+            if (v == null) {
+                return new CompressedBitmap();
+            }
+            // smallest stored value that satisfies the bound
+            long k = v.setScale(0, RoundingMode.CEILING).longValue();
+            if (!lowInclusive && v.compareTo(BigDecimal.valueOf(k)) == 0) {
+                k++;
+            }
+            res = CompressedBitmap.and(res, atLeast(k));
+        }
+        if (high != null) {
+            BigDecimal v = toDecimal(high);
+            if (v == null) {
+                return new CompressedBitmap();
+            }
+            long k = v.setScale(0, RoundingMode.FLOOR).longValue();
+            if (!highInclusive && v.compareTo(BigDecimal.valueOf(k)) == 0) {
+                k--;
+            }
+            res = CompressedBitmap.and(res, atMost(k));
+        }
+        return res == exists ? exists.copy() : res;
+    }
+
+    // Records whose stored value is at least k, compared slice by slice from the
+    // most significant bit down.
+    private CompressedBitmap atLeast(long k) {
+        CompressedBitmap[] cmp = compare(k);
+        return CompressedBitmap.or(cmp[1], cmp[2]);
+    }
+
+    private CompressedBitmap atMost(long k) {
+        CompressedBitmap[] cmp = compare(k);
+        return CompressedBitmap.or(cmp[0], cmp[1]);
+    }
+
+    // Splits the records into those below, equal to and above the scaled value k.
+    private CompressedBitmap[] compare(long k) {
+        long d = k - offset;
+        if (d < 0) {
+            return new CompressedBitmap[] { new CompressedBitmap(), new CompressedBitmap(), exists };
+        }
+        if (slices.size() < 63 && d >= (1L << slices.size())) {
+            return new CompressedBitmap[] { exists, new CompressedBitmap(), new CompressedBitmap() };
+        }
+        CompressedBitmap lt = new CompressedBitmap();
+        CompressedBitmap gt = new CompressedBitmap();
+        CompressedBitmap eq = exists;
+        for (int i = slices.size() - 1; i >= 0 && !eq.isEmpty(); i--) {
+            CompressedBitmap slice = slices.get(i);
+            if (((d >>> i) & 1) != 0) {
+                lt = CompressedBitmap.or(lt, CompressedBitmap.andNot(eq, slice));
+                eq = CompressedBitmap.and(eq, slice);
+            } else {
+                gt = CompressedBitmap.or(gt, CompressedBitmap.and(eq, slice));
+                eq = CompressedBitmap.andNot(eq, slice);
+            }
+        }
+        return new CompressedBitmap[] { lt, eq, gt };
+    }
+
+    // Number of filtered records with a value; a null filter means every record.
+    public int count(CompressedBitmap filter) {
+        return filter == null ? exists.cardinality() : CompressedBitmap.andCardinality(exists, filter);
+    }
+
+    // Summed as a BigInteger, since the stored values fill a long and their sum
+    // can overflow one.
+    public double sum(CompressedBitmap filter) {
+        CompressedBitmap f = filter == null ? exists : CompressedBitmap.and(exists, filter);
+        BigInteger total = BigInteger.valueOf(offset).multiply(BigInteger.valueOf(f.cardinality()));
+        for (int i = 0; i < slices.size(); i++) {
+            total = total.add(BigInteger.valueOf(CompressedBitmap.andCardinality(slices.get(i), f)).shiftLeft(i));
+        }
+        return new BigDecimal(total, scale).doubleValue();
+    }
+
+    public Double avg(CompressedBitmap filter) {
+        int n = count(filter);
+        return n == 0 ? null : sum(filter) / n;
+    }
+
+    public Double min(CompressedBitmap filter) {
+        return extreme(filter, false);
+    }
+
+    public Double max(CompressedBitmap filter) {
+        return extreme(filter, true);
+    }
+
+    // Walks the slices from the top, keeping the candidates that have (for the
+    // maximum) or lack (for the minimum) each bit whenever any of them does.
+    private Double extreme(CompressedBitmap filter, boolean max) {
+        CompressedBitmap candidates = filter == null ? exists : CompressedBitmap.and(exists, filter);
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        long d = 0;
+        for (int i = slices.size() - 1; i >= 0; i--) {
+            CompressedBitmap next = max ? CompressedBitmap.and(candidates, slices.get(i))
+                    : CompressedBitmap.andNot(candidates, slices.get(i));
+            if (!next.isEmpty()) {
+                candidates = next;
+                if (max) {
+                    d |= 1L << i;
+                }
+            } else if (!max) {
+                d |= 1L << i;
+            }
+        }
+        return (offset + d) / Math.pow(10, scale);
+    }
+
+    // Widens the scale, multiplying every stored value; if that would overflow
+    // the values keep the old scale.
+    private void rescale(int newScale) {
+        long factor = BigDecimal.ONE.movePointRight(newScale - scale).longValueExact();
+        long newOffset;
+        try {
+            newOffset = Math.multiplyExact(offset, factor);
+        } catch (ArithmeticException e) {
+            return;
+        }
+        if (reencode(newOffset, factor)) {
+            scale = newScale;
+        }
+    }
+
+    // Re-encodes every record as value * factor - newOffset. Returns false, and
+    // leaves the index as it was, when a value would overflow.
+    private boolean reencode(long newOffset, long factor) {
+        int[] ordinals = exists.toArray();
+        long[] values = new long[ordinals.length];
+        for (int i = 0; i < slices.size(); i++) {
+            long bit = 1L << i;
+            slices.get(i).forEach(o -> values[Arrays.binarySearch(ordinals, o)] |= bit);
+        }
+        try {
+            for (int j = 0; j < values.length; j++) {
+                values[j] = Math.subtractExact(Math.multiplyExact(Math.addExact(offset, values[j]), factor), newOffset);
+                if (values[j] < 0) {
+                    return false;
+                }
+            }
+        } catch (ArithmeticException e) {
+            return false;
+        }
+        offset = newOffset;
+        slices = new ArrayList<>();
+        exists = new CompressedBitmap();
+        for (int j = 0; j < ordinals.length; j++) {
+            long d = values[j];
+            for (int i = 0; d != 0; i++, d >>>= 1) {
+                if ((d & 1) != 0) {
+                    while (slices.size() <= i) {
+                        slices.add(new CompressedBitmap());
+                    }
+                    slices.get(i).add(ordinals[j]);
+                }
+            }
+            exists.add(ordinals[j]);
+        }
+        return true;
+    }
+
+    // A numeric value moved scale digits to the left of the decimal point.
+    private BigDecimal toDecimal(String value) {
+        return toDecimal(value, scale);
+    }
+
+    private static BigDecimal toDecimal(String value, int scale) {
+        if (Page.toNumber(value) == null) {
+            return null;
+        }
+        try {
+            return new BigDecimal(value).movePointRight(scale);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -1,11 +1,16 @@
 package DBMS;
 
 import java.io.Serializable;
-import java.util.BitSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class BitmapIndex implements Serializable {
-    private HashMap<String, BitSet> indexMap;
+    private static final long serialVersionUID = -2405337584679467079L;
+    private HashMap<String, CompressedBitmap> indexMap;
     private int size;
 
     public BitmapIndex() {
@@ -14,32 +19,72 @@ public class BitmapIndex implements Serializable {
     }
 
     public void insert(String value, int position) {
-        BitSet bitSet = indexMap.computeIfAbsent(value, k -> new BitSet(size));
-        bitSet.set(position);
+        CompressedBitmap bitmap = indexMap.computeIfAbsent(value, k -> new CompressedBitmap());
+        bitmap.add(position);
         if (position >= size) {
             size = position + 1;
         }
     }
 
     public String getBitString(String value) {
-        BitSet bitSet = indexMap.get(value);
-        if (bitSet == null) {
-            return getZeroBitString(size);
+        char[] bits = new char[size];
+        Arrays.fill(bits, '0');
+        CompressedBitmap bitmap = indexMap.get(value);
+        if (bitmap != null) {
+            bitmap.forEach(i -> {
+                if (i < bits.length) {
+                    bits[i] = '1';
+                }
+            });
         }
-        
-        StringBuilder sb = new StringBuilder(size);
-        for (int i = 0; i < size; i++) {
-            sb.append(bitSet.get(i) ? "1" : "0");
+        return new String(bits);
+    }
+
+    // Read-only view of a value's bitmap; empty when the value is not indexed.
+    public CompressedBitmap getBitmap(String value) {
+        CompressedBitmap bitmap = indexMap.get(value);
+        if (bitmap == null) {
+            return new CompressedBitmap().readOnly();
+        }
+        return bitmap.readOnly();
+    }
+
+    public int cardinality(String value) {
+        CompressedBitmap bitmap = indexMap.get(value);
+        return bitmap == null ? 0 : bitmap.cardinality();
+    }
+
+    // Union of the bitmaps of several values, e.g. for an IN list.
+    public CompressedBitmap or(Collection<String> values) {
+        ArrayList<CompressedBitmap> bitmaps = new ArrayList<>();
+        for (String value : values) {
+            CompressedBitmap bitmap = indexMap.get(value);
+            if (bitmap != null) {
+                bitmaps.add(bitmap);
+            }
+        }
+        return CompressedBitmap.or(bitmaps);
+    }
+
+    // Adds another index's records, e.g. one built over a different range of pages.
+    public void merge(BitmapIndex other) {
+        for (Map.Entry<String, CompressedBitmap> e : other.indexMap.entrySet()) {
+            indexMap.merge(e.getKey(), e.getValue(), CompressedBitmap::or);
         }
-        return sb.toString();
+        updateSize(other.size);
+    }
+
+    public static CompressedBitmap and(List<CompressedBitmap> bitmaps) {
+        return CompressedBitmap.and(bitmaps);
     }
 
-    private String getZeroBitString(int length) {
-        StringBuilder sb = new StringBuilder(length);
-        for (int i = 0; i < length; i++) {
-            sb.append('0');
+    // Rough heap size of the index, for the IndexRegistry memory budget.
+    public long sizeInBytes() {
+        long res = 64;
+        for (Map.Entry<String, CompressedBitmap> e : indexMap.entrySet()) {
+            res += 64 + 2L * e.getKey().length() + e.getValue().sizeInBytes();
         }
-        return sb.toString();
+        return res;
     }
 
     public void updateSize(int newSize) {
@@ -47,4 +92,4 @@ public class BitmapIndex implements Serializable {
             size = newSize;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,242 @@
+package DBMS;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+public class BufferPool {
+
+	// A resident page frame. Pages are only written through FileManager, which
+	// updates or drops the frame as it writes, so a hit is served without looking
+	// at the file. Dirty frames are newer than their file until written back; a
+	// frame whose write back fails stays resident and dirty.
+	private static class Frame {
+		String tableName;
+		int pageNumber;
+		Page page;
+		int pinCount;
+		boolean referenced;
+		boolean dirty;
+	}
+
+	private static final HashMap<String, Frame> frames = new HashMap<String, Frame>();
+	private static final ArrayList<Frame> ring = new ArrayList<Frame>();
+	private static int hand = 0;
+	private static long hits = 0;
+	private static long misses = 0;
+	private static long writes = 0;
+	private static long lastFlush = System.currentTimeMillis();
+
+	private static String key(String tableName, int pageNumber) {
+		return tableName + File.separator + pageNumber;
+	}
+
+	public static synchronized Page pin(String tableName, int pageNumber) {
+		Frame f = frames.get(key(tableName, pageNumber));
+		if (f != null) {
+			hits++;
+			f.pinCount++;
+			f.referenced = true;
+			return f.page;
+		}
+		misses++;
+		Page p = FileManager.readTablePage(tableName, pageNumber);
+		if (p == null) {
+			return null;
+		}
+		f = admit(tableName, pageNumber, p);
+		if (f != null) {
+			f.pinCount++;
+		}
+		return p;
+	}
+
+	// The resident copy of a page for a read-only scan, or null when the caller
+	// should read the page itself. Scanned pages are not admitted, so a scan
+	// decodes outside the pool's lock and does not push out the working set.
+	public static synchronized Page peek(String tableName, int pageNumber) {
+		Frame f = frames.get(key(tableName, pageNumber));
+		if (f != null) {
+			hits++;
+			f.referenced = true;
+			return f.page;
+		}
+		misses++;
+		return null;
+	}
+
+	public static synchronized void unpin(String tableName, int pageNumber) {
+		Frame f = frames.get(key(tableName, pageNumber));
+		if (f != null && f.pinCount > 0) {
+			f.pinCount--;
+		}
+	}
+
+	// Called after a page has been written so the resident copy matches disk.
+	public static synchronized void put(String tableName, int pageNumber, Page p) {
+		Frame f = frames.get(key(tableName, pageNumber));
+		if (f != null) {
+			f.page = p;
+			f.referenced = true;
+			f.dirty = false;
+		} else {
+			admit(tableName, pageNumber, p);
+		}
+	}
+
+	// Write-back mode: keep the page in memory and defer the file write to
+	// eviction, the flush interval or an explicit flush. Returns false when
+	// the page could not be made resident and must be written through.
+	public static synchronized boolean markDirty(String tableName, int pageNumber, Page p) {
+		Frame f = frames.get(key(tableName, pageNumber));
+		if (f == null) {
+			f = admit(tableName, pageNumber, p);
+			if (f == null) {
+				return false;
+			}
+		}
+		f.page = p;
+		f.referenced = true;
+		f.dirty = true;
+		if (System.currentTimeMillis() - lastFlush >= DBApp.flushInterval) {
+			flushAll();
+		}
+		return true;
+	}
+
+	// Returns false, leaving the frame dirty, when the page could not be written;
+	// writeTablePage has reported the error by then.
+	private static boolean writeBack(Frame f) {
+		if (!FileManager.writeTablePage(f.tableName, f.pageNumber, f.page)) {
+			return false;
+		}
+		f.dirty = false;
+		writes++;
+		return true;
+	}
+
+	// Returns false when some dirty page could not be written and is still dirty.
+	public static synchronized boolean flush(String tableName) {
+		boolean res = true;
+		for (Frame f : ring) {
+			if (f.dirty && f.tableName.equals(tableName)) {
+				res &= writeBack(f);
+			}
+		}
+		return res;
+	}
+
+	public static synchronized boolean flushAll() {
+		boolean res = true;
+		for (Frame f : ring) {
+			if (f.dirty) {
+				res &= writeBack(f);
+			}
+		}
+		lastFlush = System.currentTimeMillis();
+		return res;
+	}
+
+	private static Frame admit(String tableName, int pageNumber, Page p) {
+		if (DBApp.bufferPoolSize <= 0) {
+			return null;
+		}
+		while (ring.size() >= DBApp.bufferPoolSize) {
+			if (!evict()) {
+				// every frame is pinned, serve the page without caching it
+				return null;
+			}
+		}
+		Frame f = new Frame();
+		f.tableName = tableName;
+		f.pageNumber = pageNumber;
+		f.page = p;
+		f.referenced = true;
+		frames.put(key(tableName, pageNumber), f);
+		ring.add(f);
+		return f;
+	}
+
+	// CLOCK sweep: clear reference bits until an unpinned, unreferenced frame
+	// is found. Two full turns without a victim means everything is pinned or
+	// holds a dirty page that cannot be written.
+	private static boolean evict() {
+		for (int i = 0; i < 2 * ring.size(); i++) {
+			if (hand >= ring.size()) {
+				hand = 0;
+			}
+			Frame f = ring.get(hand);
+			if (f.pinCount == 0) {
+				if (!f.referenced && (!f.dirty || writeBack(f))) {
+					remove(f);
+					return true;
+				}
+				f.referenced = false;
+			}
+			hand++;
+		}
+		return false;
+	}
+
+	private static void remove(Frame f) {
+		int pos = ring.indexOf(f);
+		ring.remove(pos);
+		if (pos < hand) {
+			hand--;
+		}
+		frames.remove(key(f.tableName, f.pageNumber));
+	}
+
+	public static synchronized void invalidate(String tableName) {
+		for (Frame f : new ArrayList<Frame>(ring)) {
+			if (f.tableName.equals(tableName) && (!f.dirty || writeBack(f))) {
+				remove(f);
+			}
+		}
+	}
+
+	// Drops every frame, including dirty ones; used when the database is reset.
+	public static synchronized void clear() {
+		frames.clear();
+		ring.clear();
+		hand = 0;
+	}
+
+	public static synchronized int size() {
+		return ring.size();
+	}
+
+	public static synchronized long getHits() {
+		return hits;
+	}
+
+	public static synchronized long getMisses() {
+		return misses;
+	}
+
+	public static synchronized long getWrites() {
+		return writes;
+	}
+
+	public static synchronized int dirtyCount() {
+		int res = 0;
+		for (Frame f : ring) {
+			if (f.dirty) {
+				res++;
+			}
+		}
+		return res;
+	}
+
+	public static synchronized void resetStats() {
+		hits = 0;
+		misses = 0;
+		writes = 0;
+	}
+
+	public static synchronized String stats() {
+		long total = hits + misses;
+		return "Buffer pool pages:" + ring.size() + "/" + DBApp.bufferPoolSize + ", hits:" + hits
+				+ ", misses:" + misses + ", write backs:" + writes + ", hit ratio:" + (total == 0 ? 0 : (double) hits / total);
+	}
+}
@@ -0,0 +1,408 @@
+package DBMS;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Loads a delimited text file into a table. The calling thread parses the file
+// into pages; a writer thread stores the pages in order while an index thread
+// adds their records to the table's indexes. Both hand-offs go through bounded
+// queues, so at most DBApp.bulkLoadQueuePages pages are in flight per thread.
+// Fields are split on the delimiter as-is: quoting is not supported. The file
+// is checked in full before anything is written, and a load that still fails
+// part way puts the table and its indexes back as they were.
+public class BulkLoader {
+
+	// One page worth of parsed records and where they go.
+	private static class Batch {
+		int pageNumber;
+		int firstOrdinal;
+		Page page;
+		ArrayList<String[]> records = new ArrayList<String[]>();
+	}
+
+	private static final Batch END = new Batch();
+
+	private final String tableName;
+	private final Table table;
+	private final char delimiter;
+	private final BlockingQueue<Batch> pages;
+	private final BlockingQueue<Batch> rows;
+	private final ArrayList<BitmapIndex> indexes = new ArrayList<BitmapIndex>();
+	private final ArrayList<Integer> indexColumns = new ArrayList<Integer>();
+	private final ArrayList<HashIndex> hashIndexes = new ArrayList<HashIndex>();
+	private final ArrayList<Integer> hashColumns = new ArrayList<Integer>();
+	private final ArrayList<BPlusTree> trees = new ArrayList<BPlusTree>();
+	private final ArrayList<Integer> treeColumns = new ArrayList<Integer>();
+	private final ArrayList<BitSlicedIndex> slicedIndexes = new ArrayList<BitSlicedIndex>();
+	private final ArrayList<Integer> slicedColumns = new ArrayList<Integer>();
+	private final ArrayList<BitmapIndex> compositeIndexes = new ArrayList<BitmapIndex>();
+	private final ArrayList<String[]> compositeColumns = new ArrayList<String[]>();
+	private volatile Throwable failure;
+
+	private BulkLoader(Table table, char delimiter) {
+		this.tableName = table.name;
+		this.table = table;
+		this.delimiter = delimiter;
+		this.pages = new ArrayBlockingQueue<Batch>(DBApp.bulkLoadQueuePages);
+		this.rows = new ArrayBlockingQueue<Batch>(DBApp.bulkLoadQueuePages);
+	}
+
+	public static int load(String tableName, String filePath, char delimiter, boolean hasHeader,
+			String[] indexColumns) throws IOException {
+		long startTime = System.currentTimeMillis();
+		Table t = Catalog.get(tableName);
+		BulkLoader loader = new BulkLoader(t, delimiter);
+		// a malformed line fails the load before the table is touched
+		loader.parse(filePath, hasHeader, false);
+		// indexes on disk must match the table if the load has to be undone
+		IndexRegistry.flush(tableName);
+
+		// Indexes already on the table are kept up to date; requested indexes are
+		// built during the load when the table starts out empty, or afterwards.
+		ArrayList<String> built = new ArrayList<String>();
+		ArrayList<String> deferred = new ArrayList<String>();
+		for (String colName : t.indexedColumns) {
+			if (loader.addIndex(colName, IndexRegistry.get(tableName, colName))) {
+				built.add(colName);
+			}
+		}
+		for (String colName : t.hashIndexedColumns) {
+			HashIndex index = IndexRegistry.getHash(tableName, colName);
+			int colIndex = Arrays.asList(t.columnsNames).indexOf(colName);
+			if (index != null && colIndex != -1) {
+				loader.hashIndexes.add(index);
+				loader.hashColumns.add(colIndex);
+			}
+		}
+		for (String colName : t.treeIndexedColumns) {
+			BPlusTree tree = IndexRegistry.getTree(tableName, colName);
+			int colIndex = Arrays.asList(t.columnsNames).indexOf(colName);
+			if (tree != null && colIndex != -1) {
+				loader.trees.add(tree);
+				loader.treeColumns.add(colIndex);
+			}
+		}
+		for (String colName : t.bitSlicedColumns) {
+			BitSlicedIndex index = IndexRegistry.getBitSliced(tableName, colName);
+			int colIndex = Arrays.asList(t.columnsNames).indexOf(colName);
+			if (index != null && colIndex != -1) {
+				loader.slicedIndexes.add(index);
+				loader.slicedColumns.add(colIndex);
+			}
+		}
+		for (String[] columns : t.compositeIndexes) {
+			BitmapIndex index = IndexRegistry.get(tableName, Table.compositeName(columns));
+			if (index != null) {
+				loader.compositeIndexes.add(index);
+				loader.compositeColumns.add(columns);
+			}
+		}
+		if (indexColumns != null) {
+			for (String colName : indexColumns) {
+				if (built.contains(colName) || deferred.contains(colName)
+						|| Arrays.asList(t.columnsNames).indexOf(colName) == -1) {
+					continue;
+				}
+				if (t.recordsCount == 0) {
+					BitmapIndex index = new BitmapIndex();
+					loader.addIndex(colName, index);
+					built.add(colName);
+				} else {
+					deferred.add(colName);
+				}
+			}
+		}
+
+		int firstPage = Math.max(t.pageCount - 1, 0);
+		int recordsCount = t.recordsCount;
+		int pageCount = t.pageCount;
+		Page last = FileManager.loadTablePage(tableName, pageCount - 1);
+		Page lastPage = last == null ? null : new Page(new ArrayList<String[]>(last.select()));
+		int count;
+		try {
+			count = loader.run(filePath, hasHeader);
+		} catch (IOException e) {
+			loader.rollback(recordsCount, pageCount, lastPage);
+			throw e;
+		}
+
+		for (int i = 0; i < built.size(); i++) {
+			BitmapIndex index = loader.indexes.get(i);
+			index.updateSize(t.recordsCount);
+			IndexRegistry.put(tableName, built.get(i), index);
+			t.addIndexedColumn(built.get(i));
+		}
+		for (int i = 0; i < loader.hashIndexes.size(); i++) {
+			IndexRegistry.putHash(tableName, t.columnsNames[loader.hashColumns.get(i)], loader.hashIndexes.get(i));
+		}
+		for (int i = 0; i < loader.trees.size(); i++) {
+			IndexRegistry.putTree(tableName, t.columnsNames[loader.treeColumns.get(i)], loader.trees.get(i));
+		}
+		for (int i = 0; i < loader.slicedIndexes.size(); i++) {
+			IndexRegistry.putBitSliced(tableName, t.columnsNames[loader.slicedColumns.get(i)],
+					loader.slicedIndexes.get(i));
+		}
+		for (int i = 0; i < loader.compositeIndexes.size(); i++) {
+			loader.compositeIndexes.get(i).updateSize(t.recordsCount);
+			IndexRegistry.put(tableName, Table.compositeName(loader.compositeColumns.get(i)),
+					loader.compositeIndexes.get(i));
+		}
+		long stopTime = System.currentTimeMillis();
+		t.addTrace("Bulk loaded: " + count + " records from " + new File(filePath).getName() + ", at pages:"
+				+ firstPage + "-" + Math.max(t.pageCount - 1, 0) + ", execution time (mil):"
+				+ (stopTime - startTime));
+		Catalog.store(t);
+		if (!deferred.isEmpty()) {
+			DBApp.createBitMapIndexes(tableName, deferred.toArray(new String[0]));
+		}
+		return count;
+	}
+
+	private boolean addIndex(String colName, BitmapIndex index) {
+		int colIndex = Arrays.asList(table.columnsNames).indexOf(colName);
+		if (index != null && colIndex != -1) {
+			indexes.add(index);
+			indexColumns.add(colIndex);
+			return true;
+		}
+		return false;
+	}
+
+	// Puts the table back as it was before a load that failed part way: its
+	// counters, the last page the load topped up, and its indexes, which are
+	// dropped from the registry and read again from disk. Pages written past the
+	// old end are overwritten by later inserts. Tree nodes may have been written
+	// while the load ran, so the trees are rebuilt.
+	private void rollback(int recordsCount, int pageCount, Page lastPage) {
+		table.recordsCount = recordsCount;
+		table.pageCount = pageCount;
+		if (lastPage != null) {
+			FileManager.storeTablePage(tableName, pageCount - 1, lastPage);
+		}
+		IndexRegistry.discard(tableName);
+		ArrayList<String[]> allRecords = null;
+		for (String colName : table.treeIndexedColumns) {
+			int colIndex = Arrays.asList(table.columnsNames).indexOf(colName);
+			if (colIndex == -1) {
+				continue;
+			}
+			if (allRecords == null) {
+				allRecords = table.select();
+			}
+			BPlusTree tree = new BPlusTree(tableName, colName, DBApp.treeOrder);
+			for (int i = 0; i < allRecords.size(); i++) {
+				tree.insert(allRecords.get(i)[colIndex], i);
+			}
+			IndexRegistry.putTree(tableName, colName, tree);
+		}
+	}
+
+	private int run(String filePath, boolean hasHeader) throws IOException {
+		Thread writer = new Thread("bulk-load-pages-" + tableName) {
+			public void run() {
+				try {
+					for (Batch b = pages.take(); b != END; b = pages.take()) {
+						if (failure == null && !FileManager.storeTablePage(tableName, b.pageNumber, b.page)) {
+							failure = new IOException("Could not store page " + b.pageNumber);
+						}
+					}
+				} catch (Throwable e) {
+					failure = e;
+				}
+			}
+		};
+		Thread indexer = new Thread("bulk-load-indexes-" + tableName) {
+			public void run() {
+				try {
+					for (Batch b = rows.take(); b != END; b = rows.take()) {
+						// the registry writes and evicts indexes under its class lock
+						synchronized (IndexRegistry.class) {
+							index(b);
+						}
+					}
+				} catch (Throwable e) {
+					failure = e;
+				}
+			}
+		};
+		writer.start();
+		indexer.start();
+
+		int count = 0;
+		try {
+			count = parse(filePath, hasHeader, true);
+		} finally {
+			try {
+				pages.put(END);
+				rows.put(END);
+				writer.join();
+				indexer.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while loading " + filePath, e);
+			}
+		}
+		if (failure != null) {
+			throw failure instanceof IOException ? (IOException) failure : new IOException(failure);
+		}
+		return count;
+	}
+
+	// Adds a batch's records to every index being maintained.
+	private void index(Batch b) {
+		for (int r = 0; r < b.records.size(); r++) {
+			String[] record = b.records.get(r);
+			int ordinal = b.firstOrdinal + r;
+			for (int i = 0; i < indexes.size(); i++) {
+				indexes.get(i).insert(record[indexColumns.get(i)], ordinal);
+			}
+			for (int i = 0; i < hashIndexes.size(); i++) {
+				hashIndexes.get(i).insert(record[hashColumns.get(i)], Table.pageOf(ordinal), Table.slotOf(ordinal));
+			}
+			for (int i = 0; i < trees.size(); i++) {
+				trees.get(i).insert(record[treeColumns.get(i)], ordinal);
+			}
+			for (int i = 0; i < slicedIndexes.size(); i++) {
+				slicedIndexes.get(i).insert(record[slicedColumns.get(i)], ordinal);
+			}
+			for (int i = 0; i < compositeIndexes.size(); i++) {
+				compositeIndexes.get(i).insert(table.compositeKeyOf(compositeColumns.get(i), record), ordinal);
+			}
+		}
+	}
+
+	// Decodes the file through a channel and emits one Batch per page; without
+	// apply it only checks that every line has the table's number of fields.
+	private int parse(String filePath, boolean hasHeader, boolean apply) throws IOException {
+		FileChannel in = FileChannel.open(new File(filePath).toPath(), StandardOpenOption.READ);
+		CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+		ByteBuffer bytes = ByteBuffer.allocateDirect(1 << 20);
+		CharBuffer chars = CharBuffer.allocate(1 << 20);
+		ArrayList<String> fields = new ArrayList<String>();
+		StringBuilder field = new StringBuilder();
+		boolean skip = hasHeader;
+		boolean eof = false;
+		int line = 1;
+		int count = 0;
+
+		Batch batch = apply ? openBatch(true) : null;
+		try {
+			while (!eof) {
+				eof = in.read(bytes) == -1;
+				bytes.flip();
+				CoderResult res = decoder.decode(bytes, chars, eof);
+				if (res.isError()) {
+					res.throwException();
+				}
+				if (eof) {
+					decoder.flush(chars);
+				}
+				bytes.compact();
+				chars.flip();
+				while (chars.hasRemaining()) {
+					char c = chars.get();
+					if (c == delimiter) {
+						fields.add(field.toString());
+						field.setLength(0);
+					} else if (c == '\n') {
+						if (field.length() > 0 && field.charAt(field.length() - 1) == '\r') {
+							field.setLength(field.length() - 1);
+						}
+						if (!skip && (field.length() > 0 || !fields.isEmpty())) {
+							fields.add(field.toString());
+							String[] record = toRecord(fields, line);
+							if (apply) {
+								batch = add(batch, record);
+							}
+							count++;
+						}
+						skip = false;
+						fields.clear();
+						field.setLength(0);
+						line++;
+					} else {
+						field.append(c);
+					}
+				}
+				chars.clear();
+				if (failure != null) {
+					break;
+				}
+			}
+			if (!skip && (field.length() > 0 || !fields.isEmpty())) {
+				fields.add(field.toString());
+				String[] record = toRecord(fields, line);
+				if (apply) {
+					batch = add(batch, record);
+				}
+				count++;
+			}
+		} finally {
+			in.close();
+		}
+		if (apply) {
+			flushBatch(batch);
+		}
+		return count;
+	}
+
+	private String[] toRecord(ArrayList<String> fields, int line) throws IOException {
+		if (fields.size() != table.columnsNames.length) {
+			throw new IOException("Line " + line + ": expected " + table.columnsNames.length + " fields but found "
+					+ fields.size());
+		}
+		return fields.toArray(new String[fields.size()]);
+	}
+
+	// The first batch starts from the table's last page so a partially filled
+	// page is topped up; later batches always follow a full page.
+	private Batch openBatch(boolean first) {
+		Batch b = new Batch();
+		b.firstOrdinal = table.recordsCount;
+		Page last = first ? FileManager.loadTablePage(tableName, table.pageCount - 1) : null;
+		if (last != null && last.select().size() < DBApp.dataPageSize) {
+			b.pageNumber = table.pageCount - 1;
+			b.page = new Page(new ArrayList<String[]>(last.select()));
+		} else {
+			b.pageNumber = table.pageCount;
+			b.page = new Page();
+		}
+		return b;
+	}
+
+	private Batch add(Batch b, String[] record) throws IOException {
+		if (!b.page.insert(record)) {
+			flushBatch(b);
+			b = openBatch(false);
+			b.page.insert(record);
+		}
+		b.records.add(record);
+		table.recordsCount++;
+		table.pageCount = Math.max(table.pageCount, b.pageNumber + 1);
+		return b;
+	}
+
+	private void flushBatch(Batch b) throws IOException {
+		if (b.records.isEmpty()) {
+			return;
+		}
+		try {
+			pages.put(b);
+			rows.put(b);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while loading " + tableName, e);
+		}
+	}
+}
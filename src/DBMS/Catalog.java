@@ -0,0 +1,104 @@
+package DBMS;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+// Resident table metadata. Tables are loaded once and then served from memory;
+// changes are either written through (store) or only marked dirty and written
+// on the next flush, when the flush interval has elapsed, or at shutdown.
+public class Catalog {
+
+	private static final HashMap<String, Table> tables = new HashMap<String, Table>();
+	private static final HashSet<String> dirty = new HashSet<String>();
+	private static long lastFlush = System.currentTimeMillis();
+	private static long loads = 0;
+	private static long stores = 0;
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
+				BufferPool.flushAll();
+				IndexRegistry.flushAll();
+				flushAll();
+			}
+		});
+	}
+
+	public static synchronized Table get(String tableName) {
+		Table t = tables.get(tableName);
+		if (t == null) {
+			t = FileManager.loadTable(tableName);
+			loads++;
+			if (t != null) {
+				tables.put(tableName, t);
+			}
+		}
+		return t;
+	}
+
+	public static synchronized void create(Table t) {
+		tables.put(t.name, t);
+		dirty.remove(t.name);
+		FileManager.storeTable(t.name, t);
+		stores++;
+	}
+
+	// Structural changes (page and record counts, indexed columns) are written
+	// through, unless pages are themselves written back lazily.
+	public static synchronized void store(Table t) {
+		if (DBApp.writeBack) {
+			markDirty(t);
+			return;
+		}
+		tables.put(t.name, t);
+		dirty.remove(t.name);
+		FileManager.storeTable(t.name, t);
+		stores++;
+	}
+
+	public static synchronized void markDirty(Table t) {
+		tables.put(t.name, t);
+		dirty.add(t.name);
+		if (System.currentTimeMillis() - lastFlush >= DBApp.flushInterval) {
+			flushAll();
+		}
+	}
+
+	public static synchronized void flush(String tableName) {
+		if (dirty.remove(tableName)) {
+			FileManager.storeTable(tableName, tables.get(tableName));
+			stores++;
+		}
+	}
+
+	public static synchronized void flushAll() {
+		for (String tableName : new ArrayList<String>(dirty)) {
+			flush(tableName);
+		}
+		lastFlush = System.currentTimeMillis();
+	}
+
+	public static synchronized boolean isDirty(String tableName) {
+		return dirty.contains(tableName);
+	}
+
+	// Drops every resident table without writing it; used when the database is reset.
+	public static synchronized void clear() {
+		tables.clear();
+		dirty.clear();
+	}
+
+	public static synchronized long getLoads() {
+		return loads;
+	}
+
+	public static synchronized long getStores() {
+		return stores;
+	}
+
+	public static synchronized void resetStats() {
+		loads = 0;
+		stores = 0;
+	}
+}
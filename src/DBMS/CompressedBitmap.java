@@ -0,0 +1,761 @@
+package DBMS;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+// A set of non-negative ints split into 64K chunks by their high 16 bits. Each
+// chunk is stored in whichever container is smallest for its contents: a sorted
+// array (up to 4096 values), a 1024-word bitmap, or a list of runs. Sparse and
+// clustered bitmaps therefore cost memory in proportion to what they hold rather
+// than to the highest position set.
+public class CompressedBitmap implements Serializable {
+
+	private static final long serialVersionUID = -8953745326769575507L;
+
+	static final int ARRAY_MAX = 4096;
+	static final int WORDS = 1024;
+
+	private transient char[] keys = new char[4];
+	private transient Container[] containers = new Container[4];
+	private transient int size = 0;
+	private transient boolean readOnly = false;
+
+	public CompressedBitmap() {
+	}
+
+	// A view sharing this bitmap's storage that rejects modification. It is
+	// meant to be read right away: later adds to this bitmap may or may not
+	// show through it.
+	public CompressedBitmap readOnly() {
+		CompressedBitmap res = new CompressedBitmap();
+		res.keys = keys;
+		res.containers = containers;
+		res.size = size;
+		res.readOnly = true;
+		return res;
+	}
+
+	// Every value in [start, end).
+	public static CompressedBitmap range(int start, int end) {
+		CompressedBitmap res = new CompressedBitmap();
+		while (start < end) {
+			int high = start >>> 16;
+			int chunkEnd = Math.min(end, (high + 1) << 16);
+			RunContainer run = new RunContainer();
+			run.runs = new char[] { (char) start, (char) (chunkEnd - start - 1) };
+			run.count = 1;
+			res.append((char) high, run);
+			start = chunkEnd;
+		}
+		return res;
+	}
+
+	public void add(int x) {
+		if (readOnly) {
+			throw new UnsupportedOperationException("Read-only bitmap");
+		}
+		char high = (char) (x >>> 16);
+		int i = find(high);
+		if (i >= 0) {
+			containers[i] = containers[i].add((char) x);
+		} else {
+			insertAt(-i - 1, high, new ArrayContainer().add((char) x));
+		}
+	}
+
+	public boolean contains(int x) {
+		int i = find((char) (x >>> 16));
+		return i >= 0 && containers[i].contains((char) x);
+	}
+
+	public int cardinality() {
+		int res = 0;
+		for (int i = 0; i < size; i++) {
+			res += containers[i].cardinality();
+		}
+		return res;
+	}
+
+	// Rough heap size: the key and container arrays plus each container's storage.
+	public long sizeInBytes() {
+		long res = 48 + 2L * keys.length + 8L * containers.length;
+		for (int i = 0; i < size; i++) {
+			res += 16 + containers[i].storageBytes();
+		}
+		return res;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	// Visits the set values in increasing order.
+	public void forEach(IntConsumer action) {
+		for (int i = 0; i < size; i++) {
+			containers[i].forEach(keys[i] << 16, action);
+		}
+	}
+
+	public int[] toArray() {
+		int[] res = new int[cardinality()];
+		int[] pos = { 0 };
+		forEach(v -> res[pos[0]++] = v);
+		return res;
+	}
+
+	public CompressedBitmap copy() {
+		CompressedBitmap res = new CompressedBitmap();
+		for (int i = 0; i < size; i++) {
+			res.append(keys[i], containers[i].copy());
+		}
+		return res;
+	}
+
+	public static CompressedBitmap and(CompressedBitmap a, CompressedBitmap b) {
+		CompressedBitmap res = new CompressedBitmap();
+		int i = 0, j = 0;
+		while (i < a.size && j < b.size) {
+			if (a.keys[i] < b.keys[j]) {
+				i++;
+			} else if (a.keys[i] > b.keys[j]) {
+				j++;
+			} else {
+				Container c = Container.and(a.containers[i], b.containers[j]);
+				if (c.cardinality() > 0) {
+					res.append(a.keys[i], c);
+				}
+				i++;
+				j++;
+			}
+		}
+		return res;
+	}
+
+	public static CompressedBitmap or(CompressedBitmap a, CompressedBitmap b) {
+		CompressedBitmap res = new CompressedBitmap();
+		int i = 0, j = 0;
+		while (i < a.size || j < b.size) {
+			if (j >= b.size || (i < a.size && a.keys[i] < b.keys[j])) {
+				res.append(a.keys[i], a.containers[i].copy());
+				i++;
+			} else if (i >= a.size || a.keys[i] > b.keys[j]) {
+				res.append(b.keys[j], b.containers[j].copy());
+				j++;
+			} else {
+				res.append(a.keys[i], Container.or(a.containers[i], b.containers[j]));
+				i++;
+				j++;
+			}
+		}
+		return res;
+	}
+
+	// Intersects any number of bitmaps, smallest first, stopping once empty.
+	public static CompressedBitmap and(List<CompressedBitmap> bitmaps) {
+		if (bitmaps.isEmpty()) {
+			return new CompressedBitmap();
+		}
+		ArrayList<CompressedBitmap> sorted = new ArrayList<CompressedBitmap>(bitmaps);
+		Collections.sort(sorted, Comparator.comparingInt(CompressedBitmap::cardinality));
+		CompressedBitmap res = sorted.get(0);
+		for (int i = 1; i < sorted.size() && !res.isEmpty(); i++) {
+			res = and(res, sorted.get(i));
+		}
+		return res == sorted.get(0) ? res.copy() : res;
+	}
+
+	// Unions any number of bitmaps pairwise, so each position is copied about
+	// log(n) times rather than once per bitmap.
+	public static CompressedBitmap or(List<CompressedBitmap> bitmaps) {
+		if (bitmaps.isEmpty()) {
+			return new CompressedBitmap();
+		}
+		ArrayList<CompressedBitmap> level = new ArrayList<CompressedBitmap>(bitmaps);
+		if (level.size() == 1) {
+			return level.get(0).copy();
+		}
+		while (level.size() > 1) {
+			ArrayList<CompressedBitmap> next = new ArrayList<CompressedBitmap>();
+			for (int i = 0; i + 1 < level.size(); i += 2) {
+				next.add(or(level.get(i), level.get(i + 1)));
+			}
+			if (level.size() % 2 == 1) {
+				next.add(level.get(level.size() - 1));
+			}
+			level = next;
+		}
+		return level.get(0);
+	}
+
+	public static CompressedBitmap andNot(CompressedBitmap a, CompressedBitmap b) {
+		CompressedBitmap res = new CompressedBitmap();
+		int i = 0, j = 0;
+		while (i < a.size) {
+			if (j >= b.size || a.keys[i] < b.keys[j]) {
+				res.append(a.keys[i], a.containers[i].copy());
+				i++;
+			} else if (a.keys[i] > b.keys[j]) {
+				j++;
+			} else {
+				Container c = Container.andNot(a.containers[i], b.containers[j]);
+				if (c.cardinality() > 0) {
+					res.append(a.keys[i], c);
+				}
+				i++;
+				j++;
+			}
+		}
+		return res;
+	}
+
+	public static int andCardinality(CompressedBitmap a, CompressedBitmap b) {
+		int res = 0;
+		int i = 0, j = 0;
+		while (i < a.size && j < b.size) {
+			if (a.keys[i] < b.keys[j]) {
+				i++;
+			} else if (a.keys[i] > b.keys[j]) {
+				j++;
+			} else {
+				res += Container.and(a.containers[i], b.containers[j]).cardinality();
+				i++;
+				j++;
+			}
+		}
+		return res;
+	}
+
+	// Converts every chunk to its smallest container.
+	public void optimize() {
+		if (readOnly) {
+			throw new UnsupportedOperationException("Read-only bitmap");
+		}
+		for (int i = 0; i < size; i++) {
+			containers[i] = containers[i].optimize();
+		}
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof CompressedBitmap)) {
+			return false;
+		}
+		return Arrays.equals(toArray(), ((CompressedBitmap) o).toArray());
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(toArray());
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+
+	// Sequential inserts almost always hit the last chunk, so check it first.
+	private int find(char high) {
+		if (size > 0 && keys[size - 1] == high) {
+			return size - 1;
+		}
+		int lo = 0, hi = size - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (keys[mid] < high) {
+				lo = mid + 1;
+			} else if (keys[mid] > high) {
+				hi = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(lo + 1);
+	}
+
+	private void insertAt(int i, char high, Container c) {
+		if (size == keys.length) {
+			keys = Arrays.copyOf(keys, size * 2);
+			containers = Arrays.copyOf(containers, size * 2);
+		}
+		System.arraycopy(keys, i, keys, i + 1, size - i);
+		System.arraycopy(containers, i, containers, i + 1, size - i);
+		keys[i] = high;
+		containers[i] = c;
+		size++;
+	}
+
+	private void append(char high, Container c) {
+		insertAt(size, high, c);
+	}
+
+	// Serialized as: chunk count, then per chunk its key, container type and contents.
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeInt(size);
+		for (int i = 0; i < size; i++) {
+			Container c = containers[i].optimize();
+			out.writeChar(keys[i]);
+			out.writeByte(c.type());
+			c.write(out);
+		}
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		int n = in.readInt();
+		keys = new char[Math.max(n, 4)];
+		containers = new Container[Math.max(n, 4)];
+		size = 0;
+		for (int i = 0; i < n; i++) {
+			char high = in.readChar();
+			Container c;
+			switch (in.readByte()) {
+			case ArrayContainer.TYPE:
+				c = new ArrayContainer();
+				break;
+			case BitmapContainer.TYPE:
+				c = new BitmapContainer();
+				break;
+			case RunContainer.TYPE:
+				c = new RunContainer();
+				break;
+			default:
+				throw new IOException("Unknown bitmap container type");
+			}
+			c.read(in);
+			append(high, c);
+		}
+	}
+
+	private static abstract class Container {
+
+		abstract Container add(char x);
+
+		abstract boolean contains(char x);
+
+		abstract int cardinality();
+
+		abstract void forEach(int base, IntConsumer action);
+
+		// ORs the contents into a WORDS-long bitmap.
+		abstract void fill(long[] words);
+
+		abstract Container copy();
+
+		abstract int storageBytes();
+
+		abstract byte type();
+
+		abstract void write(ObjectOutputStream out) throws IOException;
+
+		abstract void read(ObjectInputStream in) throws IOException;
+
+		long[] toWords() {
+			long[] words = new long[WORDS];
+			fill(words);
+			return words;
+		}
+
+		Container optimize() {
+			return fromWords(toWords());
+		}
+
+		static Container and(Container a, Container b) {
+			if (a instanceof ArrayContainer) {
+				return ((ArrayContainer) a).filter(b, true);
+			}
+			if (b instanceof ArrayContainer) {
+				return ((ArrayContainer) b).filter(a, true);
+			}
+			long[] words = a.toWords();
+			long[] other = b.toWords();
+			for (int i = 0; i < WORDS; i++) {
+				words[i] &= other[i];
+			}
+			return fromWords(words);
+		}
+
+		static Container or(Container a, Container b) {
+			long[] words = a.toWords();
+			b.fill(words);
+			return fromWords(words);
+		}
+
+		static Container andNot(Container a, Container b) {
+			if (a instanceof ArrayContainer) {
+				return ((ArrayContainer) a).filter(b, false);
+			}
+			long[] words = a.toWords();
+			long[] other = b.toWords();
+			for (int i = 0; i < WORDS; i++) {
+				words[i] &= ~other[i];
+			}
+			return fromWords(words);
+		}
+
+		// Picks the smallest of the three representations for the given bits.
+		static Container fromWords(long[] words) {
+			int card = 0;
+			int runs = 0;
+			for (int i = 0; i < WORDS; i++) {
+				long w = words[i];
+				card += Long.bitCount(w);
+				// a run starts wherever a set bit follows a clear bit
+				long prev = (w << 1) | (i > 0 ? words[i - 1] >>> 63 : 0);
+				runs += Long.bitCount(w & ~prev);
+			}
+			int arrayBytes = 2 * card;
+			int runBytes = 4 * runs;
+			int bitmapBytes = 8 * WORDS;
+			if (runBytes < arrayBytes && runBytes < bitmapBytes) {
+				return RunContainer.fromWords(words, runs);
+			}
+			if (card <= ARRAY_MAX) {
+				return ArrayContainer.fromWords(words, card);
+			}
+			BitmapContainer res = new BitmapContainer();
+			res.words = words;
+			res.count = card;
+			return res;
+		}
+	}
+
+	private static class ArrayContainer extends Container {
+		static final byte TYPE = 0;
+
+		char[] values = new char[4];
+		int count = 0;
+
+		int storageBytes() {
+			return 16 + 2 * values.length;
+		}
+
+		static ArrayContainer fromWords(long[] words, int card) {
+			ArrayContainer res = new ArrayContainer();
+			res.values = new char[Math.max(card, 4)];
+			for (int i = 0; i < WORDS; i++) {
+				long w = words[i];
+				while (w != 0) {
+					res.values[res.count++] = (char) (i * 64 + Long.numberOfTrailingZeros(w));
+					w &= w - 1;
+				}
+			}
+			return res;
+		}
+
+		Container add(char x) {
+			int pos;
+			if (count == 0 || values[count - 1] < x) {
+				pos = count;
+			} else {
+				pos = Arrays.binarySearch(values, 0, count, x);
+				if (pos >= 0) {
+					return this;
+				}
+				pos = -pos - 1;
+			}
+			if (count == ARRAY_MAX) {
+				BitmapContainer res = new BitmapContainer();
+				fill(res.words);
+				res.count = count;
+				return res.add(x);
+			}
+			if (count == values.length) {
+				values = Arrays.copyOf(values, Math.min(count * 2, ARRAY_MAX));
+			}
+			System.arraycopy(values, pos, values, pos + 1, count - pos);
+			values[pos] = x;
+			count++;
+			return this;
+		}
+
+		boolean contains(char x) {
+			return Arrays.binarySearch(values, 0, count, x) >= 0;
+		}
+
+		int cardinality() {
+			return count;
+		}
+
+		void forEach(int base, IntConsumer action) {
+			for (int i = 0; i < count; i++) {
+				action.accept(base | values[i]);
+			}
+		}
+
+		void fill(long[] words) {
+			for (int i = 0; i < count; i++) {
+				words[values[i] >>> 6] |= 1L << values[i];
+			}
+		}
+
+		// An array never needs a bitmap, so only check whether runs would be smaller.
+		Container optimize() {
+			int runs = count == 0 ? 0 : 1;
+			for (int i = 1; i < count; i++) {
+				if (values[i] != values[i - 1] + 1) {
+					runs++;
+				}
+			}
+			return 4 * runs < 2 * count ? super.optimize() : this;
+		}
+
+		// Keeps the values that are (keep = true) or are not (keep = false) in other.
+		ArrayContainer filter(Container other, boolean keep) {
+			ArrayContainer res = new ArrayContainer();
+			res.values = new char[Math.max(count, 4)];
+			for (int i = 0; i < count; i++) {
+				if (other.contains(values[i]) == keep) {
+					res.values[res.count++] = values[i];
+				}
+			}
+			return res;
+		}
+
+		Container copy() {
+			ArrayContainer res = new ArrayContainer();
+			res.values = Arrays.copyOf(values, Math.max(count, 4));
+			res.count = count;
+			return res;
+		}
+
+		byte type() {
+			return TYPE;
+		}
+
+		void write(ObjectOutputStream out) throws IOException {
+			out.writeShort(count - 1);
+			for (int i = 0; i < count; i++) {
+				out.writeChar(values[i]);
+			}
+		}
+
+		void read(ObjectInputStream in) throws IOException {
+			count = in.readUnsignedShort() + 1;
+			values = new char[Math.max(count, 4)];
+			for (int i = 0; i < count; i++) {
+				values[i] = in.readChar();
+			}
+		}
+	}
+
+	private static class BitmapContainer extends Container {
+		static final byte TYPE = 1;
+
+		long[] words = new long[WORDS];
+		int count = 0;
+
+		int storageBytes() {
+			return 16 + 8 * WORDS;
+		}
+
+		Container add(char x) {
+			long bit = 1L << x;
+			if ((words[x >>> 6] & bit) == 0) {
+				words[x >>> 6] |= bit;
+				count++;
+			}
+			return this;
+		}
+
+		boolean contains(char x) {
+			return (words[x >>> 6] & (1L << x)) != 0;
+		}
+
+		int cardinality() {
+			return count;
+		}
+
+		void forEach(int base, IntConsumer action) {
+			for (int i = 0; i < WORDS; i++) {
+				long w = words[i];
+				while (w != 0) {
+					action.accept(base | (i * 64 + Long.numberOfTrailingZeros(w)));
+					w &= w - 1;
+				}
+			}
+		}
+
+		void fill(long[] target) {
+			for (int i = 0; i < WORDS; i++) {
+				target[i] |= words[i];
+			}
+		}
+
+		long[] toWords() {
+			return words.clone();
+		}
+
+		Container copy() {
+			BitmapContainer res = new BitmapContainer();
+			res.words = words.clone();
+			res.count = count;
+			return res;
+		}
+
+		byte type() {
+			return TYPE;
+		}
+
+		void write(ObjectOutputStream out) throws IOException {
+			for (int i = 0; i < WORDS; i++) {
+				out.writeLong(words[i]);
+			}
+		}
+
+		void read(ObjectInputStream in) throws IOException {
+			count = 0;
+			for (int i = 0; i < WORDS; i++) {
+				words[i] = in.readLong();
+				count += Long.bitCount(words[i]);
+			}
+		}
+	}
+
+	// Runs are stored as (start, length - 1) pairs in increasing order.
+	private static class RunContainer extends Container {
+		static final byte TYPE = 2;
+
+		char[] runs = new char[4];
+		int count = 0;
+
+		int storageBytes() {
+			return 16 + 2 * runs.length;
+		}
+
+		static RunContainer fromWords(long[] words, int n) {
+			RunContainer res = new RunContainer();
+			res.runs = new char[Math.max(2 * n, 4)];
+			int v = 0;
+			while (v < 1 << 16) {
+				// next set bit at or after v starts a run
+				int word = v >>> 6;
+				long w = words[word] & (-1L << v);
+				while (w == 0) {
+					if (++word == WORDS) {
+						return res;
+					}
+					w = words[word];
+				}
+				int start = word * 64 + Long.numberOfTrailingZeros(w);
+				// next clear bit after it ends the run
+				word = start >>> 6;
+				w = ~words[word] & (-1L << start);
+				while (w == 0 && ++word < WORDS) {
+					w = ~words[word];
+				}
+				v = word == WORDS ? 1 << 16 : word * 64 + Long.numberOfTrailingZeros(w);
+				res.runs[2 * res.count] = (char) start;
+				res.runs[2 * res.count + 1] = (char) (v - start - 1);
+				res.count++;
+			}
+			return res;
+		}
+
+		Container add(char x) {
+			if (count > 0) {
+				int lastEnd = runs[2 * count - 2] + runs[2 * count - 1];
+				if (x == lastEnd + 1) {
+					runs[2 * count - 1]++;
+					return this;
+				}
+				if (x > lastEnd + 1) {
+					if (2 * count == runs.length) {
+						runs = Arrays.copyOf(runs, runs.length * 2);
+					}
+					runs[2 * count] = x;
+					runs[2 * count + 1] = 0;
+					count++;
+					return this;
+				}
+				if (contains(x)) {
+					return this;
+				}
+			}
+			long[] words = toWords();
+			words[x >>> 6] |= 1L << x;
+			return fromWords(words);
+		}
+
+		boolean contains(char x) {
+			int lo = 0, hi = count - 1;
+			while (lo <= hi) {
+				int mid = (lo + hi) >>> 1;
+				int start = runs[2 * mid];
+				if (x < start) {
+					hi = mid - 1;
+				} else if (x > start + runs[2 * mid + 1]) {
+					lo = mid + 1;
+				} else {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		int cardinality() {
+			int res = 0;
+			for (int i = 0; i < count; i++) {
+				res += runs[2 * i + 1] + 1;
+			}
+			return res;
+		}
+
+		void forEach(int base, IntConsumer action) {
+			for (int i = 0; i < count; i++) {
+				int end = runs[2 * i] + runs[2 * i + 1];
+				for (int v = runs[2 * i]; v <= end; v++) {
+					action.accept(base | v);
+				}
+			}
+		}
+
+		void fill(long[] words) {
+			for (int i = 0; i < count; i++) {
+				int start = runs[2 * i];
+				int end = start + runs[2 * i + 1] + 1;
+				while (start < end) {
+					int word = start >>> 6;
+					int bits = Math.min(end, (word + 1) << 6) - start;
+					long mask = bits == 64 ? -1L : ((1L << bits) - 1) << start;
+					words[word] |= mask;
+					start += bits;
+				}
+			}
+		}
+
+		Container copy() {
+			RunContainer res = new RunContainer();
+			res.runs = Arrays.copyOf(runs, Math.max(2 * count, 4));
+			res.count = count;
+			return res;
+		}
+
+		byte type() {
+			return TYPE;
+		}
+
+		void write(ObjectOutputStream out) throws IOException {
+			out.writeShort(count);
+			for (int i = 0; i < 2 * count; i++) {
+				out.writeChar(runs[i]);
+			}
+		}
+
+		void read(ObjectInputStream in) throws IOException {
+			count = in.readUnsignedShort();
+			runs = new char[Math.max(2 * count, 4)];
+			for (int i = 0; i < 2 * count; i++) {
+				runs[i] = in.readChar();
+			}
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package DBMS;
+
+import java.util.Arrays;
+
+// A predicate over a table's records for DBApp.selectIndex and DBApp.count:
+// equality, IN lists, AND / OR of other conditions and their negations. Over
+// indexed columns it is evaluated with bitmap intersections, unions and
+// complements.
+public class Condition {
+
+	static final int IN = 0;
+	static final int AND = 1;
+	static final int OR = 2;
+	static final int NOT = 3;
+
+	final int kind;
+	// IN: the column and its accepted values
+	final String column;
+	final String[] values;
+	// AND, OR: the combined conditions; NOT: the negated one
+	final Condition[] parts;
+
+	private Condition(int kind, String column, String[] values, Condition[] parts) {
+		this.kind = kind;
+		this.column = column;
+		this.values = values;
+		this.parts = parts;
+	}
+
+	public static Condition eq(String column, String value) {
+		return new Condition(IN, column, new String[] { value }, null);
+	}
+
+	public static Condition in(String column, String... values) {
+		return new Condition(IN, column, values.clone(), null);
+	}
+
+	public static Condition ne(String column, String value) {
+		return not(eq(column, value));
+	}
+
+	public static Condition notIn(String column, String... values) {
+		return not(in(column, values));
+	}
+
+	public static Condition not(Condition part) {
+		return new Condition(NOT, null, null, new Condition[] { part });
+	}
+
+	public static Condition and(Condition... parts) {
+		return new Condition(AND, null, null, parts.clone());
+	}
+
+	public static Condition or(Condition... parts) {
+		return new Condition(OR, null, null, parts.clone());
+	}
+
+	// Whether a record of a table with the given columns satisfies the condition.
+	boolean matches(String[] columnsNames, String[] record) {
+		if (kind == IN) {
+			int col = Arrays.asList(columnsNames).indexOf(column);
+			return col != -1 && Arrays.asList(values).contains(record[col]);
+		}
+		if (kind == NOT) {
+			return !parts[0].matches(columnsNames, record);
+		}
+		for (Condition part : parts) {
+			if (part.matches(columnsNames, record) == (kind == OR)) {
+				return kind == OR;
+			}
+		}
+		return kind == AND;
+	}
+
+	public String toString() {
+		if (kind == IN) {
+			return values.length == 1 ? column + "=" + values[0] : column + " IN " + Arrays.toString(values);
+		}
+		if (kind == NOT) {
+			Condition part = parts[0];
+			if (part.kind == IN) {
+				return part.values.length == 1 ? part.column + "!=" + part.values[0]
+						: part.column + " NOT IN " + Arrays.toString(part.values);
+			}
+			return "NOT " + part;
+		}
+		StringBuilder res = new StringBuilder("(");
+		for (int i = 0; i < parts.length; i++) {
+			if (i > 0) {
+				res.append(kind == AND ? " AND " : " OR ");
+			}
+			res.append(parts[i]);
+		}
+		return res.append(")").toString();
+	}
+}
@@ -3,17 +3,40 @@ package DBMS;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.BitSet;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class DBApp {
     static int dataPageSize = 2;
+    static int bufferPoolSize = 256;
+    static boolean writeBack = false;
+    static long flushInterval = 1000;
+    static boolean segmentStorage = false;
+    static int segmentSlotSize = 8192;
+    static int segmentExtentSlots = 64;
+    static int traceTailSize = 16;
+    static long scanCacheBytes = 16 * 1024 * 1024;
+    static int indexFlushBatch = 64;
+    static int indexLogMergeEntries = 4096;
+    static long indexCacheBytes = 64 * 1024 * 1024;
+    static int bulkLoadQueuePages = 256;
+    static int indexBuildPages = 64;
+    static int indexBuildThreads = Runtime.getRuntime().availableProcessors();
+    static int treeOrder = 64;
+    static int treeNodeCacheSize = 1024;
+    static int bitSliceMaxScale = 4;
 
     public static void createTable(String tableName, String[] columnsNames) {
         Table t = new Table(tableName, columnsNames);
-        FileManager.storeTable(tableName, t);
+        Catalog.create(t);
     }
 
     // public static void insert(String tableName, String[] record)
@@ -24,50 +47,77 @@ public class DBApp {
     // }
 
     public static ArrayList<String[]> select(String tableName) {
-        Table t = FileManager.loadTable(tableName);
+        Table t = Catalog.get(tableName);
         ArrayList<String[]> res = t.select();
-        FileManager.storeTable(tableName, t);
         return res;
     }
 
     public static ArrayList<String[]> select(String tableName, int pageNumber, int recordNumber) {
-        Table t = FileManager.loadTable(tableName);
+        Table t = Catalog.get(tableName);
         ArrayList<String[]> res = t.select(pageNumber, recordNumber);
-        FileManager.storeTable(tableName, t);
         return res;
     }
 
     public static ArrayList<String[]> select(String tableName, String[] cols, String[] vals) {
-        Table t = FileManager.loadTable(tableName);
+        Table t = Catalog.get(tableName);
+
+        // Equality on a hash indexed column only needs the pages its pointers name
+        HashIndex best = null;
+        String bestVal = null;
+        for (int i = 0; i < cols.length; i++) {
+            if (t.hashIndexedColumns.contains(cols[i])) {
+                HashIndex index = IndexRegistry.getHash(tableName, cols[i]);
+                if (index != null && (best == null || index.count(vals[i]) < best.count(bestVal))) {
+                    best = index;
+                    bestVal = vals[i];
+                }
+            }
+        }
+        if (best != null) {
+            return t.select(cols, vals, best.getPointers(bestVal));
+        }
         ArrayList<String[]> res = t.select(cols, vals);
-        FileManager.storeTable(tableName, t);
         return res;
     }
 
+    /**
+     * Writes every dirty page of a table held by the buffer pool back to disk,
+     * followed by its dirty bitmap indexes and its catalog entry if it has
+     * unsaved changes
+     * @param tableName Name of the table
+     */
+    public static void flush(String tableName) {
+        BufferPool.flush(tableName);
+        IndexRegistry.flush(tableName);
+        Catalog.flush(tableName);
+    }
+
     public static String getFullTrace(String tableName) {
-        Table t = FileManager.loadTable(tableName);
+        Table t = Catalog.get(tableName);
         String res = t.getFullTrace();
         return res;
     }
 
     public static String getLastTrace(String tableName) {
-        Table t = FileManager.loadTable(tableName);
+        Table t = Catalog.get(tableName);
         String res = t.getLastTrace();
         return res;
     }
 
 
     public static ArrayList<String[]> validateRecords(String tableName) {
-        Table t = FileManager.loadTable(tableName);
+        Table t = Catalog.get(tableName);
         if (t == null) return new ArrayList<>();
         
         ArrayList<String[]> missingRecords = new ArrayList<>();
         ArrayList<String[]> allExpectedRecords = t.select();
         
-        // Build set of existing records
+        // Build set of existing records from the files themselves, since the
+        // buffer pool still holds pages removed behind FileManager's back
+        BufferPool.flush(tableName);
         HashSet<String> existingRecords = new HashSet<>();
         for (int i = 0; i < t.pageCount; i++) {
-            Page p = FileManager.loadTablePage(tableName, i);
+            Page p = FileManager.readTablePage(tableName, i);
             if (p != null) {
                 for (String[] record : p.select()) {
                     existingRecords.add(Arrays.toString(record));
@@ -83,8 +133,7 @@ public class DBApp {
         }
         
         // Update trace with exact required format
-        t.trace.add("Validating records: " + missingRecords.size() + " records missing.");
-        FileManager.storeTable(tableName, t);
+        t.addTrace("Validating records: " + missingRecords.size() + " records missing.");
         
         return missingRecords;
     }
@@ -93,7 +142,7 @@ public class DBApp {
     
     
     public static void recoverRecords(String tableName, ArrayList<String[]> missing) {
-        Table t = FileManager.loadTable(tableName);
+        Table t = Catalog.get(tableName);
         if (t == null) {
             return;
         }
@@ -118,7 +167,7 @@ public class DBApp {
             for (String[] record : missing) {
                 Integer pos = recordPositions.get(Arrays.toString(record));
                 if (pos != null) {
-                    int pageNum = pos / dataPageSize;
+                    int pageNum = Table.pageOf(pos);
                     if (!pageRecordsMap.containsKey(pageNum)) {
                         pageRecordsMap.put(pageNum, new ArrayList<>());
                         recoveredPages.add(pageNum);
@@ -134,7 +183,7 @@ public class DBApp {
             for (Integer pageNum : recoveredPages) {
                 Page p = new Page();
                 // Get all records that should be on this page
-                int startIdx = pageNum * dataPageSize;
+                int startIdx = Table.ordinal(pageNum, 0);
                 int endIdx = Math.min(startIdx + dataPageSize, allRecords.size());
 
                 // Add records in their original order
@@ -147,15 +196,16 @@ public class DBApp {
             }
         }
 
+        ScanCache.invalidate(tableName);
+
         // Always add a trace, even if nothing was recovered
         String traceMsg = "Recovering " + missingCount + " records in pages: " + recoveredPages;
-        t.trace.add(traceMsg);
-        FileManager.storeTable(tableName, t);
+        t.addTrace(traceMsg);
     }
     
     public static void createBitMapIndex(String tableName, String colName) {
         long startTime = System.currentTimeMillis();
-        Table t = FileManager.loadTable(tableName);
+        Table t = Catalog.get(tableName);
 
         // Find column index
         int colIndex = -1;
@@ -167,31 +217,569 @@ public class DBApp {
         }
         if (colIndex == -1) return;
 
-        // Get all records
+        // Create bitmap index, building ranges of pages in parallel
+        BitmapIndex bitmapIndex = IndexBuilder.build(t, new int[] { colIndex })[0];
+
+        // Save the index
+        IndexRegistry.put(tableName, colName, bitmapIndex);
+
+        // Add the column to indexed columns list (automatically sorted in getFullTrace)
+        t.addIndexedColumn(colName);
+
+        long stopTime = System.currentTimeMillis();
+        t.addTrace("Index created for column: " + colName + ", execution time (mil):" + (stopTime - startTime));
+        Catalog.store(t);
+    }
+
+    /**
+     * Creates bitmap indexes on several columns with a single scan of the table,
+     * then writes the finished indexes in parallel
+     * @param tableName Name of the table
+     * @param colNames Names of the columns to index
+     */
+    public static void createBitMapIndexes(String tableName, String[] colNames) {
+        long startTime = System.currentTimeMillis();
+        Table t = Catalog.get(tableName);
+        ArrayList<String> names = new ArrayList<>();
+        ArrayList<Integer> colIndexes = new ArrayList<>();
+        for (String colName : colNames) {
+            int colIndex = Arrays.asList(t.columnsNames).indexOf(colName);
+            if (colIndex != -1 && !names.contains(colName)) {
+                names.add(colName);
+                colIndexes.add(colIndex);
+            }
+        }
+        if (names.isEmpty()) return;
+
+        // Fill every index from one pass over the pages
+        int[] columns = new int[colIndexes.size()];
+        for (int j = 0; j < columns.length; j++) {
+            columns[j] = colIndexes.get(j);
+        }
+        BitmapIndex[] indexes = IndexBuilder.build(t, columns);
+
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Math.min(indexes.length, Runtime.getRuntime().availableProcessors()));
+        ArrayList<Future<Boolean>> written = new ArrayList<>();
+        for (int j = 0; j < indexes.length; j++) {
+            BitmapIndex index = indexes[j];
+            String colName = names.get(j);
+            written.add(pool.submit(() -> FileManager.storeTableIndex(tableName, colName, index)));
+        }
+        pool.shutdown();
+
+        ArrayList<String> created = new ArrayList<>();
+        for (int j = 0; j < indexes.length; j++) {
+            try {
+                if (!written.get(j).get()) continue;
+            } catch (InterruptedException | ExecutionException e) {
+                e.printStackTrace();
+                continue;
+            }
+            IndexRegistry.putWritten(tableName, names.get(j), indexes[j]);
+            t.addIndexedColumn(names.get(j));
+            created.add(names.get(j));
+        }
+
+        long stopTime = System.currentTimeMillis();
+        for (String colName : created) {
+            t.addTrace("Index created for column: " + colName + ", execution time (mil):" + (stopTime - startTime));
+        }
+        Catalog.store(t);
+    }
+
+    /**
+     * Creates a hash index mapping each value of a column to the page and slot
+     * of every record holding it, used by select and selectIndex for equality
+     * @param tableName Name of the table
+     * @param colName Name of the column to index
+     */
+    public static void createHashIndex(String tableName, String colName) {
+        long startTime = System.currentTimeMillis();
+        Table t = Catalog.get(tableName);
+        int colIndex = Arrays.asList(t.columnsNames).indexOf(colName);
+        if (colIndex == -1) return;
+
+        HashIndex hashIndex = new HashIndex();
+        for (int i = 0; i < t.pageCount; i++) {
+            Page p = FileManager.loadTablePage(tableName, i);
+            if (p == null) continue;
+            ArrayList<String[]> records = p.select();
+            for (int j = 0; j < records.size(); j++) {
+                hashIndex.insert(records.get(j)[colIndex], i, j);
+            }
+        }
+
+        IndexRegistry.putHash(tableName, colName, hashIndex);
+        t.addHashIndexedColumn(colName);
+
+        long stopTime = System.currentTimeMillis();
+        t.addTrace("Hash index created for column: " + colName + ", execution time (mil):" + (stopTime - startTime));
+        Catalog.store(t);
+    }
+
+    /**
+     * Creates a B+ tree index on a column, used by the range selects
+     * @param tableName Name of the table
+     * @param colName Name of the column to index
+     */
+    public static void createBTreeIndex(String tableName, String colName) {
+        long startTime = System.currentTimeMillis();
+        Table t = Catalog.get(tableName);
+        int colIndex = Arrays.asList(t.columnsNames).indexOf(colName);
+        if (colIndex == -1) return;
+
+        BPlusTree tree = new BPlusTree(tableName, colName, treeOrder);
         ArrayList<String[]> allRecords = t.select();
-        BitmapIndex bitmapIndex = new BitmapIndex();
-        bitmapIndex.updateSize(allRecords.size());
+        for (int i = 0; i < allRecords.size(); i++) {
+            tree.insert(allRecords.get(i)[colIndex], i);
+        }
+
+        IndexRegistry.putTree(tableName, colName, tree);
+        t.addTreeIndexedColumn(colName);
+
+        long stopTime = System.currentTimeMillis();
+        t.addTrace("B+ tree index created for column: " + colName + ", execution time (mil):" + (stopTime - startTime));
+        Catalog.store(t);
+    }
+
+    /**
+     * Selects the records whose value of a column lies in a range, through the
+     * column's B+ tree index if it has one and by a filtered scan otherwise.
+     * Values are compared as numbers when both sides are numeric
+     * @param tableName Name of the table
+     * @param colName Name of the column
+     * @param low Lower bound, or null for none
+     * @param lowInclusive Whether records equal to the lower bound match
+     * @param high Upper bound, or null for none
+     * @param highInclusive Whether records equal to the upper bound match
+     * @return The matching records in table order
+     */
+    public static ArrayList<String[]> selectRange(String tableName, String colName, String low, boolean lowInclusive,
+            String high, boolean highInclusive) {
+        Table t = Catalog.get(tableName);
+        if (t.treeIndexedColumns.contains(colName)) {
+            BPlusTree tree = IndexRegistry.getTree(tableName, colName);
+            if (tree != null) {
+                long startTime = System.currentTimeMillis();
+                ArrayList<String[]> res = t.fetch(tree.range(low, lowInclusive, high, highInclusive));
+                long stopTime = System.currentTimeMillis();
+                t.addTrace("Select range condition:" + Table.rangeCondition(colName, low, lowInclusive, high, highInclusive)
+                        + ", Indexed column: " + colName + ", records:" + res.size()
+                        + ", execution time (mil):" + (stopTime - startTime));
+                return res;
+            }
+        }
+        if (t.bitSlicedColumns.contains(colName)) {
+            BitSlicedIndex index = IndexRegistry.getBitSliced(tableName, colName);
+            // only a column of exactly stored numbers orders the same way in the
+            // slices and in a scan
+            if (index != null && index.isComplete() && index.isExact() && BitSlicedIndex.accepts(low)
+                    && BitSlicedIndex.accepts(high)) {
+                long startTime = System.currentTimeMillis();
+                ArrayList<String[]> res = t.fetch(index.range(low, lowInclusive, high, highInclusive));
+                long stopTime = System.currentTimeMillis();
+                t.addTrace("Select range condition:" + Table.rangeCondition(colName, low, lowInclusive, high, highInclusive)
+                        + ", Indexed column: " + colName + ", records:" + res.size()
+                        + ", execution time (mil):" + (stopTime - startTime));
+                return res;
+            }
+        }
+        return t.selectRange(colName, low, lowInclusive, high, highInclusive);
+    }
+
+    /**
+     * Creates a bit-sliced index on a numeric column, used by the range selects
+     * and the aggregates. Values keep as many decimal digits as the longest
+     * value, up to bitSliceMaxScale; once a value needs more, ranges and
+     * aggregates on the column go back to reading the records
+     * @param tableName Name of the table
+     * @param colName Name of the column to index
+     */
+    public static void createBitSlicedIndex(String tableName, String colName) {
+        long startTime = System.currentTimeMillis();
+        Table t = Catalog.get(tableName);
+        int colIndex = Arrays.asList(t.columnsNames).indexOf(colName);
+        if (colIndex == -1) return;
 
-        // Create bitmap index
+        ArrayList<String[]> allRecords = t.select();
+        int scale = 0;
+        for (String[] record : allRecords) {
+            if (Page.toNumber(record[colIndex]) != null) {
+                scale = Math.max(scale, Math.min(BitSlicedIndex.scaleOf(record[colIndex]), bitSliceMaxScale));
+            }
+        }
+        BitSlicedIndex index = new BitSlicedIndex(scale);
         for (int i = 0; i < allRecords.size(); i++) {
-            String value = allRecords.get(i)[colIndex];
-            bitmapIndex.insert(value, i);
+            index.insert(allRecords.get(i)[colIndex], i);
         }
 
-        // Save the index
-        FileManager.storeTableIndex(tableName, colName, bitmapIndex);
+        IndexRegistry.putBitSliced(tableName, colName, index);
+        t.addBitSlicedColumn(colName);
 
-        // Add the column to indexed columns list (automatically sorted in getFullTrace)
-        t.addIndexedColumn(colName);
+        long stopTime = System.currentTimeMillis();
+        t.addTrace("Bit-sliced index created for column: " + colName + ", execution time (mil):" + (stopTime - startTime));
+        Catalog.store(t);
+    }
+
+    /**
+     * Sums a numeric column over the records matching equality conditions,
+     * ignoring values that are not numbers
+     * @param tableName Name of the table
+     * @param colName Name of the column to aggregate
+     * @param cols Columns of the conditions, may be empty
+     * @param vals Values of the conditions
+     * @return The sum, or null if no record has a numeric value
+     */
+    public static Double sum(String tableName, String colName, String[] cols, String[] vals) {
+        return aggregate("SUM", tableName, colName, cols, vals);
+    }
+
+    public static Double avg(String tableName, String colName, String[] cols, String[] vals) {
+        return aggregate("AVG", tableName, colName, cols, vals);
+    }
+
+    public static Double min(String tableName, String colName, String[] cols, String[] vals) {
+        return aggregate("MIN", tableName, colName, cols, vals);
+    }
+
+    public static Double max(String tableName, String colName, String[] cols, String[] vals) {
+        return aggregate("MAX", tableName, colName, cols, vals);
+    }
+
+    /**
+     * Counts the records matching a conjunction of equality conditions without
+     * returning them. When every column is indexed the count is read off the
+     * intersected bitmaps and no page is loaded
+     * @param tableName Name of the table
+     * @param cols Names of the columns in the conditions
+     * @param vals Values the columns must equal
+     * @return The number of matching records
+     */
+    public static int count(String tableName, String[] cols, String[] vals) {
+        long startTime = System.currentTimeMillis();
+        Table t = Catalog.get(tableName);
+
+        String[] composite = coveringComposite(t, cols);
+        ArrayList<String> indexedCols = new ArrayList<>();
+        ArrayList<String> nonIndexedCols = new ArrayList<>();
+        for (String col : cols) {
+            if (t.indexedColumns.contains(col) || t.hashIndexedColumns.contains(col)
+                    || composite != null && Arrays.asList(composite).contains(col)) {
+                indexedCols.add(col);
+            } else {
+                nonIndexedCols.add(col);
+            }
+        }
+        int res;
+        if (!indexedCols.isEmpty()) {
+            // columns without an index are checked on the candidates' pages only
+            res = filterOrdinals(t, cols, vals).cardinality();
+        } else {
+            res = t.count(t.fixCond(cols, vals));
+        }
+
+        Collections.sort(indexedCols);
+        Collections.sort(nonIndexedCols);
+
+        long stopTime = System.currentTimeMillis();
+        String traceMsg = "Count condition:" + Arrays.toString(cols) + "->" + Arrays.toString(vals);
+        if (!indexedCols.isEmpty()) {
+            traceMsg += ", Indexed columns: " + indexedCols;
+        }
+        if (!nonIndexedCols.isEmpty()) {
+            traceMsg += ", Non Indexed: " + nonIndexedCols;
+        }
+        traceMsg += ", records:" + res + ", execution time (mil):" + (stopTime - startTime);
+        t.addTrace(traceMsg);
+        return res;
+    }
+
+    // Aggregates through the column's bit-sliced index when it has one, so no
+    // record is read unless a condition needs checking on its page
+    private static Double aggregate(String function, String tableName, String colName, String[] cols, String[] vals) {
+        long startTime = System.currentTimeMillis();
+        Table t = Catalog.get(tableName);
+        CompressedBitmap filter = cols == null || cols.length == 0 ? null : filterOrdinals(t, cols, vals);
+
+        Double res = null;
+        int count = 0;
+        BitSlicedIndex index = t.bitSlicedColumns.contains(colName) ? IndexRegistry.getBitSliced(tableName, colName) : null;
+        if (index != null && !index.isExact()) {
+            // rounded values would change the result
+            index = null;
+        }
+        if (index != null) {
+            count = index.count(filter);
+            if (count > 0) {
+                if (function.equals("SUM")) {
+                    res = index.sum(filter);
+                } else if (function.equals("AVG")) {
+                    res = index.avg(filter);
+                } else if (function.equals("MIN")) {
+                    res = index.min(filter);
+                } else {
+                    res = index.max(filter);
+                }
+            }
+        } else {
+            int colIndex = Arrays.asList(t.columnsNames).indexOf(colName);
+            ArrayList<String[]> records = filter == null ? t.getAllRecords() : t.fetch(filter);
+            double total = 0, least = 0, most = 0;
+            for (int i = 0; i < records.size() && colIndex != -1; i++) {
+                Double value = Page.toNumber(records.get(i)[colIndex]);
+                if (value == null) continue;
+                least = count == 0 ? value : Math.min(least, value);
+                most = count == 0 ? value : Math.max(most, value);
+                total += value;
+                count++;
+            }
+            if (count > 0) {
+                if (function.equals("SUM")) {
+                    res = total;
+                } else if (function.equals("AVG")) {
+                    res = total / count;
+                } else if (function.equals("MIN")) {
+                    res = least;
+                } else {
+                    res = most;
+                }
+            }
+        }
+
+        long stopTime = System.currentTimeMillis();
+        t.addTrace("Aggregate " + function + "(" + colName + ") condition:" + Arrays.toString(cols) + "->"
+                + Arrays.toString(vals) + ", Bit-sliced: " + (index != null) + ", records:" + count + ", result:" + res
+                + ", execution time (mil):" + (stopTime - startTime));
+        return res;
+    }
+
+    // Ordinals of the records matching every equality condition: conditions on
+    // indexed columns are intersected as bitmaps and the rest are checked on the
+    // pages of the remaining candidates
+    private static CompressedBitmap filterOrdinals(Table t, String[] cols, String[] vals) {
+        ArrayList<CompressedBitmap> bitmaps = new ArrayList<>();
+        ArrayList<String> restCols = new ArrayList<>();
+        ArrayList<String> restVals = new ArrayList<>();
+        String[] composite = coveringComposite(t, cols);
+        CompressedBitmap compositeBitmap = composite == null ? null : compositeBitmap(t, composite, cols, vals);
+        List<String> covered = compositeBitmap == null ? new ArrayList<>() : Arrays.asList(composite);
+        if (compositeBitmap != null) {
+            if (compositeBitmap.isEmpty()) {
+                return new CompressedBitmap();
+            }
+            bitmaps.add(compositeBitmap);
+        }
+        for (int i = 0; i < cols.length; i++) {
+            if (covered.contains(cols[i])) {
+                continue;
+            }
+            CompressedBitmap bitmap = indexBitmap(t, cols[i], vals[i]);
+            if (bitmap == null) {
+                restCols.add(cols[i]);
+                restVals.add(vals[i]);
+            } else if (bitmap.isEmpty()) {
+                return new CompressedBitmap();
+            } else {
+                bitmaps.add(bitmap);
+            }
+        }
+        CompressedBitmap candidates = bitmaps.isEmpty() ? t.live()
+                : CompressedBitmap.and(bitmaps);
+        if (restCols.isEmpty() || candidates.isEmpty()) {
+            return candidates;
+        }
+        return t.filter(candidates, t.fixCond(restCols.toArray(new String[0]), restVals.toArray(new String[0])));
+    }
+
+    public static ArrayList<String[]> selectLessThan(String tableName, String colName, String value) {
+        return selectRange(tableName, colName, null, false, value, false);
+    }
+
+    public static ArrayList<String[]> selectLessThanOrEqual(String tableName, String colName, String value) {
+        return selectRange(tableName, colName, null, false, value, true);
+    }
+
+    public static ArrayList<String[]> selectGreaterThan(String tableName, String colName, String value) {
+        return selectRange(tableName, colName, value, false, null, false);
+    }
+
+    public static ArrayList<String[]> selectGreaterThanOrEqual(String tableName, String colName, String value) {
+        return selectRange(tableName, colName, value, true, null, false);
+    }
+
+    public static ArrayList<String[]> selectBetween(String tableName, String colName, String low, String high) {
+        return selectRange(tableName, colName, low, true, high, true);
+    }
+
+    /**
+     * Creates a bitmap index on the combined values of several columns, used by
+     * selectIndex when its conditions cover all of them
+     * @param tableName Name of the table
+     * @param colNames Names of the columns, in key order
+     */
+    public static void createCompositeIndex(String tableName, String[] colNames) {
+        long startTime = System.currentTimeMillis();
+        Table t = Catalog.get(tableName);
+        for (String colName : colNames) {
+            if (Arrays.asList(t.columnsNames).indexOf(colName) == -1) return;
+        }
+
+        ArrayList<String[]> allRecords = t.select();
+        BitmapIndex compositeIndex = new BitmapIndex();
+        compositeIndex.updateSize(allRecords.size());
+        for (int i = 0; i < allRecords.size(); i++) {
+            compositeIndex.insert(t.compositeKeyOf(colNames, allRecords.get(i)), i);
+        }
+
+        IndexRegistry.put(tableName, Table.compositeName(colNames), compositeIndex);
+        t.addCompositeIndex(colNames.clone());
+
+        long stopTime = System.currentTimeMillis();
+        t.addTrace("Composite index created for columns: " + Arrays.toString(colNames) + ", execution time (mil):"
+                + (stopTime - startTime));
+        Catalog.store(t);
+    }
+
+    // The composite index with the most columns that the conditions cover, if any
+    private static String[] coveringComposite(Table t, String[] cols) {
+        String[] best = null;
+        for (String[] columns : t.compositeIndexes) {
+            if (Arrays.asList(cols).containsAll(Arrays.asList(columns))
+                    && (best == null || columns.length > best.length)) {
+                best = columns;
+            }
+        }
+        return best;
+    }
+
+    // The records a composite index holds for the conditions' values of its columns
+    private static CompressedBitmap compositeBitmap(Table t, String[] columns, String[] cols, String[] vals) {
+        BitmapIndex index = IndexRegistry.get(t.name, Table.compositeName(columns));
+        if (index == null) {
+            return null;
+        }
+        String[] values = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            values[i] = vals[Arrays.asList(cols).indexOf(columns[i])];
+        }
+        return index.getBitmap(Table.compositeKey(values));
+    }
+
+    /**
+     * Selects the records satisfying a condition built from equalities, IN
+     * lists, AND, OR and NOT. Parts over indexed columns are evaluated as unions,
+     * intersections and complements of their bitmaps; the rest are checked only
+     * on the pages of the remaining candidates
+     * @param tableName Name of the table
+     * @param cond The condition
+     * @return The matching records in table order
+     */
+    public static ArrayList<String[]> selectIndex(String tableName, Condition cond) {
+        long startTime = System.currentTimeMillis();
+        Table t = Catalog.get(tableName);
+
+        CompressedBitmap candidates = answerable(t, cond) ? bitmapOf(t, cond) : null;
+        boolean indexed = candidates != null;
+        if (!indexed) {
+            candidates = candidatesOf(t, cond);
+        }
+        ArrayList<String[]> res;
+        if (candidates.isEmpty()) {
+            res = new ArrayList<>();
+        } else if (indexed) {
+            res = t.fetch(candidates);
+        } else {
+            res = t.fetch(candidates, record -> cond.matches(t.columnsNames, record));
+        }
 
         long stopTime = System.currentTimeMillis();
-        t.trace.add("Index created for column: " + colName + ", execution time (mil):" + (stopTime - startTime));
-        FileManager.storeTable(tableName, t);
+        t.addTrace("Select index condition:" + cond + ", Indexed: " + indexed + ", records:"
+                + res.size() + ", execution time (mil):" + (stopTime - startTime));
+        return res;
+    }
+
+    public static int count(String tableName, Condition cond) {
+        long startTime = System.currentTimeMillis();
+        Table t = Catalog.get(tableName);
+
+        CompressedBitmap candidates = answerable(t, cond) ? bitmapOf(t, cond) : null;
+        boolean indexed = candidates != null;
+        if (!indexed) {
+            candidates = candidatesOf(t, cond);
+        }
+        int res;
+        if (indexed || candidates.isEmpty()) {
+            res = candidates.cardinality();
+        } else {
+            res = t.filter(candidates, record -> cond.matches(t.columnsNames, record)).cardinality();
+        }
+
+        long stopTime = System.currentTimeMillis();
+        t.addTrace("Count condition:" + cond + ", Indexed: " + indexed + ", records:" + res
+                + ", execution time (mil):" + (stopTime - startTime));
+        return res;
+    }
+
+    // The records a condition has to be checked on: those the indexed parts of
+    // a conjunction leave, or every record
+    private static CompressedBitmap candidatesOf(Table t, Condition cond) {
+        if (cond.kind == Condition.AND) {
+            ArrayList<CompressedBitmap> bitmaps = new ArrayList<>();
+            for (Condition part : cond.parts) {
+                CompressedBitmap bitmap = answerable(t, part) ? bitmapOf(t, part) : null;
+                if (bitmap != null) {
+                    bitmaps.add(bitmap);
+                }
+            }
+            if (!bitmaps.isEmpty()) {
+                return CompressedBitmap.and(bitmaps);
+            }
+        }
+        return t.live();
+    }
+
+    // Whether every column a condition tests has a bitmap or hash index
+    private static boolean answerable(Table t, Condition cond) {
+        if (cond.kind == Condition.IN) {
+            return t.indexedColumns.contains(cond.column) || t.hashIndexedColumns.contains(cond.column);
+        }
+        for (Condition part : cond.parts) {
+            if (!answerable(t, part)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The records satisfying a condition over indexed columns, or null if an
+    // index could not be read
+    private static CompressedBitmap bitmapOf(Table t, Condition cond) {
+        if (cond.kind == Condition.IN) {
+            return indexBitmap(t, cond.column, cond.values);
+        }
+        if (cond.kind == Condition.NOT) {
+            // the complement of the negated records within the table's live records
+            CompressedBitmap bitmap = bitmapOf(t, cond.parts[0]);
+            return bitmap == null ? null : CompressedBitmap.andNot(t.live(), bitmap);
+        }
+        if (cond.parts.length == 0) {
+            return cond.kind == Condition.AND ? t.live() : new CompressedBitmap();
+        }
+        ArrayList<CompressedBitmap> bitmaps = new ArrayList<>();
+        for (Condition part : cond.parts) {
+            CompressedBitmap bitmap = bitmapOf(t, part);
+            if (bitmap == null) {
+                return null;
+            }
+            bitmaps.add(bitmap);
+        }
+        return cond.kind == Condition.AND ? CompressedBitmap.and(bitmaps) : CompressedBitmap.or(bitmaps);
     }
 
     public static ArrayList<String[]> selectIndex(String tableName, String[] cols, String[] vals) {
         long startTime = System.currentTimeMillis();
-        Table t = FileManager.loadTable(tableName);
+        Table t = Catalog.get(tableName);
 
         // Separate indexed and non-indexed columns
         ArrayList<String> indexedCols = new ArrayList<>();
@@ -199,10 +787,14 @@ public class DBApp {
         ArrayList<String> indexedVals = new ArrayList<>();
         ArrayList<String> nonIndexedVals = new ArrayList<>();
 
+        // A composite index covering several conditions answers them in one lookup
+        String[] composite = coveringComposite(t, cols);
+        CompressedBitmap compositeBitmap = composite == null ? null : compositeBitmap(t, composite, cols, vals);
+        List<String> covered = compositeBitmap == null ? new ArrayList<>() : Arrays.asList(composite);
+
         for (int i = 0; i < cols.length; i++) {
             String col = cols[i];
-            BitmapIndex index = FileManager.loadTableIndex(tableName, col);
-            if (index != null) {
+            if (covered.contains(col) || t.indexedColumns.contains(col) || t.hashIndexedColumns.contains(col)) {
                 indexedCols.add(col);
                 indexedVals.add(vals[i]);
             } else {
@@ -211,41 +803,64 @@ public class DBApp {
             }
         }
 
-        ArrayList<String[]> allRecords = t.select();
         ArrayList<String[]> result = new ArrayList<>();
         int indexedSelectionCount = 0;
 
         if (!indexedCols.isEmpty()) {
-            BitSet finalBitSet = new BitSet(allRecords.size());
-            finalBitSet.set(0, allRecords.size(), true);
-
+            // Resident indexes cost nothing to read, so their bitmaps are taken
+            // first and intersected smallest first; indexes still on disk are then
+            // loaded one at a time, and only while the running result is not empty
+            ArrayList<Integer> cold = new ArrayList<>();
+            ArrayList<Integer> gone = new ArrayList<>();
+            ArrayList<CompressedBitmap> bitmaps = new ArrayList<>();
             for (int i = 0; i < indexedCols.size(); i++) {
-                String col = indexedCols.get(i);
-                String val = indexedVals.get(i);
-
-                BitmapIndex index = FileManager.loadTableIndex(tableName, col);
-                BitSet currentBitSet = new BitSet();
-                String bitString = index.getBitString(val);
-                for (int j = 0; j < bitString.length(); j++) {
-                    if (bitString.charAt(j) == '1') {
-                        currentBitSet.set(j);
-                    }
+                if (covered.contains(indexedCols.get(i))) {
+                    continue;
+                }
+                if (!IndexRegistry.isResident(tableName, indexedCols.get(i))) {
+                    cold.add(i);
+                    continue;
+                }
+                CompressedBitmap bitmap = indexBitmap(t, indexedCols.get(i), indexedVals.get(i));
+                if (bitmap == null) {
+                    gone.add(i);
+                } else {
+                    bitmaps.add(bitmap);
                 }
-
-                indexedSelectionCount = currentBitSet.cardinality();
-                finalBitSet.and(currentBitSet);
             }
-
-            for (int i = 0; i < allRecords.size(); i++) {
-                if (finalBitSet.get(i)) {
-                    result.add(allRecords.get(i));
+            Collections.sort(bitmaps, Comparator.comparingInt(CompressedBitmap::cardinality));
+            CompressedBitmap finalBitmap = compositeBitmap;
+            for (int i = 0; i < bitmaps.size() && (finalBitmap == null || !finalBitmap.isEmpty()); i++) {
+                finalBitmap = finalBitmap == null ? bitmaps.get(i) : CompressedBitmap.and(finalBitmap, bitmaps.get(i));
+            }
+            for (int i = 0; i < cold.size() && (finalBitmap == null || !finalBitmap.isEmpty()); i++) {
+                int pos = cold.get(i);
+                CompressedBitmap bitmap = indexBitmap(t, indexedCols.get(pos), indexedVals.get(pos));
+                if (bitmap == null) {
+                    gone.add(pos);
+                } else {
+                    finalBitmap = finalBitmap == null ? bitmap : CompressedBitmap.and(finalBitmap, bitmap);
                 }
             }
-        } else {
-            result = t.select(cols, vals);
+            // listed as indexed but the index is gone, filter on it instead
+            Collections.sort(gone, Collections.reverseOrder());
+            for (int pos : gone) {
+                nonIndexedCols.add(indexedCols.remove(pos));
+                nonIndexedVals.add(indexedVals.remove(pos));
+            }
+            if (finalBitmap == null) {
+                finalBitmap = new CompressedBitmap();
+            }
+            indexedSelectionCount = finalBitmap.cardinality();
+
+            if (!finalBitmap.isEmpty()) {
+                result = t.fetch(finalBitmap);
+            }
         }
 
-        if (!nonIndexedCols.isEmpty()) {
+        if (indexedCols.isEmpty()) {
+            result = t.select(cols, vals);
+        } else if (!nonIndexedCols.isEmpty()) {
             ArrayList<String[]> filteredResult = new ArrayList<>();
             for (String[] record : result) {
                 boolean match = true;
@@ -291,8 +906,7 @@ public class DBApp {
         traceMsg += ", Final count: " + result.size();
         traceMsg += ", execution time (mil):" + (stopTime - startTime);
 
-        t.trace.add(traceMsg);
-        FileManager.storeTable(tableName, t);
+        t.addTrace(traceMsg);
         return result;
     }
     
@@ -302,13 +916,45 @@ public class DBApp {
     
     
 
-    private static ArrayList<String> getIndexedColumns(String tableName) {
-        Table t = FileManager.loadTable(tableName);
-        return t.indexedColumns;
+    // The records of a column holding a value, from its bitmap index or else its
+    // hash index; null when the column has neither
+    private static CompressedBitmap indexBitmap(Table t, String colName, String value) {
+        if (t.indexedColumns.contains(colName)) {
+            BitmapIndex index = IndexRegistry.get(t.name, colName);
+            if (index != null) {
+                return index.getBitmap(value);
+            }
+        }
+        if (t.hashIndexedColumns.contains(colName)) {
+            HashIndex index = IndexRegistry.getHash(t.name, colName);
+            if (index != null) {
+                return index.getBitmap(value);
+            }
+        }
+        return null;
+    }
+
+    // The union of the records an index holds for any of several values
+    private static CompressedBitmap indexBitmap(Table t, String colName, String[] values) {
+        if (t.indexedColumns.contains(colName)) {
+            BitmapIndex index = IndexRegistry.get(t.name, colName);
+            if (index != null) {
+                return index.or(Arrays.asList(values));
+            }
+        }
+        ArrayList<CompressedBitmap> bitmaps = new ArrayList<>();
+        for (String value : values) {
+            CompressedBitmap bitmap = indexBitmap(t, colName, value);
+            if (bitmap == null) {
+                return null;
+            }
+            bitmaps.add(bitmap);
+        }
+        return CompressedBitmap.or(bitmaps);
     }
 
     public static void insert(String tableName, String[] record) {
-        Table t = FileManager.loadTable(tableName);
+        Table t = Catalog.get(tableName);
 
         // First insert the record
         long startTime = System.currentTimeMillis();
@@ -320,14 +966,11 @@ public class DBApp {
         }
         FileManager.storeTablePage(tableName, t.pageCount - 1, current);
         t.recordsCount++;
-
-        // Get all records including the new one
-        ArrayList<String[]> allRecords = t.select();
-        int newRecordPos = allRecords.size() - 1; // Position of the new record
+        int newRecordPos = t.recordsCount - 1; // Position of the new record
 
         // Update all existing bitmap indexes
-        for (String colName : t.columnsNames) {
-            BitmapIndex index = FileManager.loadTableIndex(tableName, colName);
+        for (String colName : t.indexedColumns) {
+            BitmapIndex index = IndexRegistry.get(tableName, colName);
             if (index != null) {
                 // Find column index
                 int colIndex = -1;
@@ -340,27 +983,205 @@ public class DBApp {
                 if (colIndex == -1)
                     continue;
 
-                // Update the index size
-                index.updateSize(allRecords.size());
-
-                // Get the value for this column in the new record
-                String value = record[colIndex];
-
-                // Update the bitmap for this value
-                index.insert(value, newRecordPos);
-
-                // Save the updated index
-                FileManager.storeTableIndex(tableName, colName, index);
+                // Append the new record's bit and leave persistence to the registry
+                index.updateSize(t.recordsCount);
+                index.insert(record[colIndex], newRecordPos);
+                IndexRegistry.markDirty(tableName, colName, record[colIndex], newRecordPos);
+            }
+        }
+        for (String colName : t.hashIndexedColumns) {
+            HashIndex index = IndexRegistry.getHash(tableName, colName);
+            int colIndex = Arrays.asList(t.columnsNames).indexOf(colName);
+            if (index != null && colIndex != -1) {
+                index.insert(record[colIndex], t.pageCount - 1, current.select().size() - 1);
+                IndexRegistry.markHashDirty(tableName, colName);
+            }
+        }
+        for (String colName : t.treeIndexedColumns) {
+            BPlusTree tree = IndexRegistry.getTree(tableName, colName);
+            int colIndex = Arrays.asList(t.columnsNames).indexOf(colName);
+            if (tree != null && colIndex != -1) {
+                tree.insert(record[colIndex], newRecordPos);
+                IndexRegistry.markTreeDirty(tableName, colName);
+            }
+        }
+        for (String colName : t.bitSlicedColumns) {
+            BitSlicedIndex index = IndexRegistry.getBitSliced(tableName, colName);
+            int colIndex = Arrays.asList(t.columnsNames).indexOf(colName);
+            if (index != null && colIndex != -1) {
+                index.insert(record[colIndex], newRecordPos);
+                IndexRegistry.markBitSlicedDirty(tableName, colName);
+            }
+        }
+        for (String[] columns : t.compositeIndexes) {
+            BitmapIndex index = IndexRegistry.get(tableName, Table.compositeName(columns));
+            if (index != null) {
+                index.updateSize(t.recordsCount);
+                String key = t.compositeKeyOf(columns, record);
+                index.insert(key, newRecordPos);
+                IndexRegistry.markDirty(tableName, Table.compositeName(columns), key, newRecordPos);
             }
         }
 
         long stopTime = System.currentTimeMillis();
-        t.trace.add("Inserted: " + Arrays.toString(record) + ", at page number:" + (t.pageCount - 1)
+        t.addTrace("Inserted: " + Arrays.toString(record) + ", at page number:" + (t.pageCount - 1)
                 + ", execution time (mil):" + (stopTime - startTime));
-        FileManager.storeTable(tableName, t);
+        Catalog.store(t);
     }
     
     
+    public static void insertBatch(String tableName, List<String[]> records) {
+        insertBatch(tableName, records.iterator());
+    }
+
+    /**
+     * Inserts a stream of records, packing them into pages so that each page is
+     * written once and every bitmap index is updated in the same pass
+     * @param tableName Name of the table
+     * @param records The records to insert, in order
+     */
+    public static void insertBatch(String tableName, Iterator<String[]> records) {
+        Table t = Catalog.get(tableName);
+        long startTime = System.currentTimeMillis();
+
+        // Resolve the indexed columns once for the whole batch
+        ArrayList<String> indexedCols = new ArrayList<>();
+        ArrayList<BitmapIndex> indexes = new ArrayList<>();
+        ArrayList<Integer> colIndexes = new ArrayList<>();
+        for (String colName : t.indexedColumns) {
+            BitmapIndex index = IndexRegistry.get(tableName, colName);
+            int colIndex = Arrays.asList(t.columnsNames).indexOf(colName);
+            if (index != null && colIndex != -1) {
+                indexedCols.add(colName);
+                indexes.add(index);
+                colIndexes.add(colIndex);
+            }
+        }
+        ArrayList<String> hashCols = new ArrayList<>();
+        ArrayList<HashIndex> hashIndexes = new ArrayList<>();
+        ArrayList<Integer> hashColIndexes = new ArrayList<>();
+        for (String colName : t.hashIndexedColumns) {
+            HashIndex index = IndexRegistry.getHash(tableName, colName);
+            int colIndex = Arrays.asList(t.columnsNames).indexOf(colName);
+            if (index != null && colIndex != -1) {
+                hashCols.add(colName);
+                hashIndexes.add(index);
+                hashColIndexes.add(colIndex);
+            }
+        }
+        ArrayList<String> treeCols = new ArrayList<>();
+        ArrayList<BPlusTree> trees = new ArrayList<>();
+        ArrayList<Integer> treeColIndexes = new ArrayList<>();
+        for (String colName : t.treeIndexedColumns) {
+            BPlusTree tree = IndexRegistry.getTree(tableName, colName);
+            int colIndex = Arrays.asList(t.columnsNames).indexOf(colName);
+            if (tree != null && colIndex != -1) {
+                treeCols.add(colName);
+                trees.add(tree);
+                treeColIndexes.add(colIndex);
+            }
+        }
+        ArrayList<String> slicedCols = new ArrayList<>();
+        ArrayList<BitSlicedIndex> slicedIndexes = new ArrayList<>();
+        ArrayList<Integer> slicedColIndexes = new ArrayList<>();
+        for (String colName : t.bitSlicedColumns) {
+            BitSlicedIndex index = IndexRegistry.getBitSliced(tableName, colName);
+            int colIndex = Arrays.asList(t.columnsNames).indexOf(colName);
+            if (index != null && colIndex != -1) {
+                slicedCols.add(colName);
+                slicedIndexes.add(index);
+                slicedColIndexes.add(colIndex);
+            }
+        }
+        ArrayList<String[]> compositeCols = new ArrayList<>();
+        ArrayList<BitmapIndex> compositeIndexes = new ArrayList<>();
+        for (String[] columns : t.compositeIndexes) {
+            BitmapIndex index = IndexRegistry.get(tableName, Table.compositeName(columns));
+            if (index != null) {
+                compositeCols.add(columns);
+                compositeIndexes.add(index);
+            }
+        }
+
+        int firstPage = Math.max(t.pageCount - 1, 0);
+        int count = 0;
+        Page current = FileManager.loadTablePage(tableName, t.pageCount - 1);
+        boolean modified = false;
+        while (records.hasNext()) {
+            String[] record = records.next();
+            if (current == null || !current.insert(record)) {
+                if (modified) {
+                    FileManager.storeTablePage(tableName, t.pageCount - 1, current);
+                }
+                current = new Page();
+                current.insert(record);
+                t.pageCount++;
+            }
+            modified = true;
+            for (int i = 0; i < indexes.size(); i++) {
+                indexes.get(i).insert(record[colIndexes.get(i)], t.recordsCount);
+            }
+            for (int i = 0; i < hashIndexes.size(); i++) {
+                hashIndexes.get(i).insert(record[hashColIndexes.get(i)], t.pageCount - 1, current.select().size() - 1);
+            }
+            for (int i = 0; i < trees.size(); i++) {
+                trees.get(i).insert(record[treeColIndexes.get(i)], t.recordsCount);
+            }
+            for (int i = 0; i < slicedIndexes.size(); i++) {
+                slicedIndexes.get(i).insert(record[slicedColIndexes.get(i)], t.recordsCount);
+            }
+            for (int i = 0; i < compositeIndexes.size(); i++) {
+                compositeIndexes.get(i).insert(t.compositeKeyOf(compositeCols.get(i), record), t.recordsCount);
+            }
+            t.recordsCount++;
+            count++;
+        }
+        if (modified) {
+            FileManager.storeTablePage(tableName, t.pageCount - 1, current);
+        }
+        // The registry may have evicted an index during the batch, so each one is
+        // registered again along with being written
+        for (int i = 0; i < indexes.size(); i++) {
+            indexes.get(i).updateSize(t.recordsCount);
+            IndexRegistry.put(tableName, indexedCols.get(i), indexes.get(i));
+        }
+        for (int i = 0; i < hashIndexes.size(); i++) {
+            IndexRegistry.putHash(tableName, hashCols.get(i), hashIndexes.get(i));
+        }
+        for (int i = 0; i < trees.size(); i++) {
+            IndexRegistry.putTree(tableName, treeCols.get(i), trees.get(i));
+        }
+        for (int i = 0; i < slicedIndexes.size(); i++) {
+            IndexRegistry.putBitSliced(tableName, slicedCols.get(i), slicedIndexes.get(i));
+        }
+        for (int i = 0; i < compositeIndexes.size(); i++) {
+            compositeIndexes.get(i).updateSize(t.recordsCount);
+            IndexRegistry.put(tableName, Table.compositeName(compositeCols.get(i)), compositeIndexes.get(i));
+        }
+
+        long stopTime = System.currentTimeMillis();
+        long elapsed = stopTime - startTime;
+        t.addTrace("Inserted batch: " + count + " records, at pages:" + firstPage + "-" + Math.max(t.pageCount - 1, 0)
+                + ", execution time (mil):" + elapsed
+                + ", throughput (records/sec):" + (count * 1000L / Math.max(elapsed, 1)));
+        Catalog.store(t);
+    }
+
+    /**
+     * Loads a delimited text file into a table, writing pages and building the
+     * requested bitmap indexes concurrently
+     * @param tableName Name of the table
+     * @param filePath Path of the file to load, one record per line
+     * @param delimiter Character separating the fields of a record
+     * @param hasHeader Whether the first line holds column names and is skipped
+     * @param indexColumns Columns to build bitmap indexes on, may be null
+     * @return The number of records loaded
+     */
+    public static int bulkLoad(String tableName, String filePath, char delimiter, boolean hasHeader,
+            String[] indexColumns) throws IOException {
+        return BulkLoader.load(tableName, filePath, delimiter, hasHeader, indexColumns);
+    }
+
     public static void main(String[] args) throws IOException {
         FileManager.reset();
         String[] cols = { "id", "name", "major", "semester", "gpa" };
@@ -443,7 +1264,7 @@ public class DBApp {
      */
     public static String getValueBits(String tableName, String colName, String value) {
         // Load the bitmap index for the specified column
-        BitmapIndex bitmapIndex = FileManager.loadTableIndex(tableName, colName);
+        BitmapIndex bitmapIndex = IndexRegistry.get(tableName, colName);
         
         if (bitmapIndex == null) {
             // If no index exists, return empty string or throw exception
@@ -0,0 +1,1085 @@
+package DBMS;
+import java.io.File;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertEquals;
+import java.util.*;
+import org.junit.Test;
+public class DBAppIndexTests
+{
+
+
+	@Test(timeout = 1000000)
+	public void InsertMaintainsResidentIndexes_0() throws Exception
+	{
+		FileManager.reset();
+
+		DBApp.dataPageSize = 2;
+		int batch = DBApp.indexFlushBatch;
+		DBApp.indexFlushBatch = 1000;
+		try
+		{
+			String[] cols0 = {"a","b","c"};
+			DBApp.createTable("ix0", cols0);
+			for(int i=0;i<10;i++)
+			{
+				DBApp.insert("ix0", new String[]{"a"+i,"b"+(i%2),"c"+(i%3)});
+			}
+			DBApp.createBitMapIndex("ix0", "b");
+			BufferPool.resetStats();
+			for(int i=10;i<40;i++)
+			{
+				DBApp.insert("ix0", new String[]{"a"+i,"b"+(i%2),"c"+(i%3)});
+			}
+			assertTrue("Inserting should only read the last page of the table.", BufferPool.getHits() + BufferPool.getMisses() <= 30);
+			assertTrue("Index updates should be batched.", IndexRegistry.isDirty("ix0", "b"));
+			StringBuilder expected0 = new StringBuilder();
+			for(int i=0;i<40;i++)
+			{
+				expected0.append(i%2==1 ? "1" : "0");
+			}
+			assertEquals("Bitmap index should include records inserted after it was created.", DBApp.getValueBits("ix0", "b", "b1"), expected0.toString());
+			DBApp.flush("ix0");
+			assertTrue("Flushing a table should write its dirty indexes.", !IndexRegistry.isDirty("ix0", "b"));
+			assertEquals("A flushed index should hold every record.", FileManager.loadTableIndex("ix0", "b").getBitString("b1"), expected0.toString());
+			assertEquals("Selecting through an index should see every record.", DBApp.selectIndex("ix0", new String[]{"b","c"}, new String[]{"b1","c0"}).size(), 7);
+		}
+		finally
+		{
+			DBApp.indexFlushBatch = batch;
+		}
+		//--------------------------------------------------------------------------
+
+		FileManager.reset();
+	}
+
+
+	@Test(timeout = 1000000)
+	public void CompressedBitmapMatchesBitSet_0() throws Exception
+	{
+		Random random = new Random(42);
+		for(int round=0;round<20;round++)
+		{
+			BitSet expected0 = new BitSet();
+			BitSet expected1 = new BitSet();
+			CompressedBitmap bitmap0 = new CompressedBitmap();
+			CompressedBitmap bitmap1 = new CompressedBitmap();
+			// sparse values, dense blocks and long runs across several chunks
+			for(int i=0;i<3000;i++)
+			{
+				int v = random.nextInt(300000);
+				expected0.set(v);
+				bitmap0.add(v);
+			}
+			for(int i=70000;i<70000+random.nextInt(20000);i++)
+			{
+				if(round%2==0 || random.nextInt(3)>0)
+				{
+					expected0.set(i);
+					bitmap0.add(i);
+				}
+			}
+			for(int i=0;i<200000;i+=1+random.nextInt(8))
+			{
+				expected1.set(i);
+				bitmap1.add(i);
+			}
+			expected1.set(131072, 196608);
+			bitmap1 = CompressedBitmap.or(bitmap1, CompressedBitmap.range(131072, 196608));
+			assertEquals("A compressed bitmap should have the same cardinality as a BitSet.", bitmap0.cardinality(), expected0.cardinality());
+			BitSet and0 = (BitSet) expected0.clone();
+			and0.and(expected1);
+			BitSet or0 = (BitSet) expected0.clone();
+			or0.or(expected1);
+			BitSet andNot0 = (BitSet) expected0.clone();
+			andNot0.andNot(expected1);
+			assertTrue("AND should match BitSet.", Arrays.equals(CompressedBitmap.and(bitmap0, bitmap1).toArray(), and0.stream().toArray()));
+			assertEquals("AND cardinality should match BitSet.", CompressedBitmap.andCardinality(bitmap0, bitmap1), and0.cardinality());
+			assertTrue("OR should match BitSet.", Arrays.equals(CompressedBitmap.or(bitmap0, bitmap1).toArray(), or0.stream().toArray()));
+			assertTrue("ANDNOT should match BitSet.", Arrays.equals(CompressedBitmap.andNot(bitmap0, bitmap1).toArray(), andNot0.stream().toArray()));
+			for(int i=0;i<1000;i++)
+			{
+				int v = random.nextInt(300000);
+				assertEquals("Membership should match BitSet.", bitmap1.contains(v), expected1.get(v));
+			}
+			java.io.ByteArrayOutputStream bout = new java.io.ByteArrayOutputStream();
+			java.io.ObjectOutputStream oos = new java.io.ObjectOutputStream(bout);
+			oos.writeObject(bitmap1);
+			oos.close();
+			CompressedBitmap read1 = (CompressedBitmap) new java.io.ObjectInputStream(new java.io.ByteArrayInputStream(bout.toByteArray())).readObject();
+			assertEquals("A serialized bitmap should read back unchanged.", read1, bitmap1);
+			read1.add(250001);
+			assertEquals("A deserialized bitmap should accept new values.", read1.cardinality(), expected1.cardinality() + (expected1.get(250001) ? 0 : 1));
+		}
+		CompressedBitmap run0 = CompressedBitmap.range(0, 1000000);
+		java.io.ByteArrayOutputStream bout = new java.io.ByteArrayOutputStream();
+		java.io.ObjectOutputStream oos = new java.io.ObjectOutputStream(bout);
+		oos.writeObject(run0);
+		oos.close();
+		assertTrue("Runs should serialize compactly.", bout.size() < 400);
+	}
+
+
+	@Test(timeout = 1000000)
+	public void HighCardinalityIndexStaysSmall_0() throws Exception
+	{
+		FileManager.reset();
+
+		DBApp.dataPageSize = 100;
+		String[] cols0 = {"id","g"};
+		DBApp.createTable("hc0", cols0);
+		ArrayList<String[]> records0 = new ArrayList<String[]>();
+		for(int i=0;i<20000;i++)
+		{
+			records0.add(new String[]{""+i,"g"+(i%4)});
+		}
+		DBApp.insertBatch("hc0", records0);
+		DBApp.createBitMapIndex("hc0", "id");
+		File index0 = new File(FileManager.directory.getAbsolutePath()+ File.separator + "hc0"+ File.separator+"id.db");
+		assertTrue("An index on a unique column should grow linearly with the rows.", index0.length() < 20000 * 64);
+		assertEquals("A unique value should have a single bit set.", DBApp.getValueBits("hc0", "id", "12345").indexOf('1'), 12345);
+		assertEquals("A unique value should have a single bit set.", DBApp.getValueBits("hc0", "id", "12345").lastIndexOf('1'), 12345);
+		//--------------------------------------------------------------------------
+
+		DBApp.dataPageSize = 2;
+		FileManager.reset();
+	}
+
+
+	@Test(timeout = 1000000)
+	public void BitmapIndexExposesBitmaps_0() throws Exception
+	{
+		BitmapIndex index0 = new BitmapIndex();
+		for(int i=0;i<100;i++)
+		{
+			index0.insert("v"+(i%5), i);
+		}
+		CompressedBitmap v1 = index0.getBitmap("v1");
+		assertEquals("A value's bitmap should hold its positions.", v1.cardinality(), 20);
+		assertTrue("A value's bitmap should hold its positions.", v1.contains(96) && !v1.contains(97));
+		assertEquals("The cardinality of a value should match its bitmap.", index0.cardinality("v1"), 20);
+		assertTrue("A missing value should have an empty bitmap.", index0.getBitmap("zz").isEmpty());
+		boolean rejected0 = false;
+		try
+		{
+			v1.add(97);
+		}
+		catch(UnsupportedOperationException e)
+		{
+			rejected0 = true;
+		}
+		assertTrue("A value's bitmap should be read-only.", rejected0);
+		assertEquals("Rejected changes should not reach the index.", index0.cardinality("v1"), 20);
+		CompressedBitmap in0 = index0.or(Arrays.asList("v1", "v3", "zz"));
+		assertEquals("The union of several values should hold all their positions.", in0.cardinality(), 40);
+		CompressedBitmap and0 = BitmapIndex.and(Arrays.asList(in0, index0.getBitmap("v3"), CompressedBitmap.range(0, 50)));
+		assertEquals("The intersection of several bitmaps should hold their common positions.", and0.toString(), "[3, 8, 13, 18, 23, 28, 33, 38, 43, 48]");
+		assertEquals("The bit string should still be available.", index0.getBitString("v4").substring(0, 10), "0000100001");
+	}
+
+
+	@Test(timeout = 1000000)
+	public void SelectIndexIntersectsSmallestFirst_0() throws Exception
+	{
+		FileManager.reset();
+
+		String[] cols0 = {"a","b","c","d"};
+		DBApp.createTable("so0", cols0);
+		for(int i=0;i<60;i++)
+		{
+			DBApp.insert("so0", new String[]{"a"+i,"b"+(i%2),"c"+(i%3),"d"+(i%10)});
+		}
+		DBApp.createBitMapIndex("so0", "b");
+		DBApp.createBitMapIndex("so0", "c");
+		DBApp.createBitMapIndex("so0", "d");
+		ArrayList<String[]> result0 = DBApp.selectIndex("so0", new String[]{"b","c","d"}, new String[]{"b1","c0","d3"});
+		ArrayList<String[]> result1 = DBApp.selectIndex("so0", new String[]{"d","c","b"}, new String[]{"d3","c0","b1"});
+		assertTrue("The trace should report the indexed selection count.", DBApp.getLastTrace("so0").contains("Indexed selection count: 2"));
+		ArrayList<String[]> expected0 = DBApp.select("so0", new String[]{"b","c","d"}, new String[]{"b1","c0","d3"});
+		assertEquals("The order of the conditions should not change the result.", result0.size(), 2);
+		assertEquals("The order of the conditions should not change the result.", result1.size(), 2);
+		for(int i=0;i<expected0.size();i++)
+		{
+			assertEquals("Indexed selection should match a full scan.", Arrays.toString(result0.get(i)), Arrays.toString(expected0.get(i)));
+			assertEquals("Indexed selection should match a full scan.", Arrays.toString(result1.get(i)), Arrays.toString(expected0.get(i)));
+		}
+
+		ScanCache.clear();
+		BufferPool.resetStats();
+		ArrayList<String[]> result2 = DBApp.selectIndex("so0", new String[]{"b","d","a"}, new String[]{"b1","d4","a5"});
+		assertEquals("Contradicting conditions should select nothing.", result2.size(), 0);
+		assertEquals("An empty intersection should not read any page.", BufferPool.getHits() + BufferPool.getMisses(), 0L);
+		assertTrue("The trace should still report the conditions.", DBApp.getLastTrace("so0").contains("Non Indexed: [a], Final count: 0"));
+		ArrayList<String[]> result3 = DBApp.selectIndex("so0", new String[]{"c","b"}, new String[]{"c9","b1"});
+		assertEquals("A missing value should select nothing.", result3.size(), 0);
+		assertEquals("An empty intersection should not read any page.", BufferPool.getHits() + BufferPool.getMisses(), 0L);
+
+		DBApp.flush("so0");
+		IndexRegistry.clear();
+		DBApp.getValueBits("so0", "b", "b1");
+		DBApp.getValueBits("so0", "d", "d3");
+		IndexRegistry.resetStats();
+		ArrayList<String[]> result4 = DBApp.selectIndex("so0", new String[]{"d","c","b"}, new String[]{"d3","c0","b0"});
+		assertEquals("Disjoint conditions should select nothing.", result4.size(), 0);
+		assertEquals("An empty intersection of resident indexes should not load the others.", IndexRegistry.getLoads(), 0L);
+		assertTrue("Columns left unread should still be reported as indexed.", DBApp.getLastTrace("so0").contains("Indexed columns: [b, c, d], Indexed selection count: 0"));
+		ArrayList<String[]> result5 = DBApp.selectIndex("so0", new String[]{"d","c","b"}, new String[]{"d3","c0","b1"});
+		assertEquals("A non-empty intersection should still load the other indexes.", IndexRegistry.getLoads(), 1L);
+		assertEquals("Loading an index during the intersection should not change the result.", result5.size(), 2);
+		//--------------------------------------------------------------------------
+
+		FileManager.reset();
+	}
+
+
+	@Test(timeout = 1000000)
+	public void SelectIndexReadsOnlyMatchingPages_0() throws Exception
+	{
+		FileManager.reset();
+
+		DBApp.dataPageSize = 10;
+		String[] cols0 = {"id","g","h"};
+		DBApp.createTable("pf0", cols0);
+		ArrayList<String[]> records0 = new ArrayList<String[]>();
+		for(int i=0;i<2000;i++)
+		{
+			records0.add(new String[]{""+i,"g"+(i%100),"h"+(i%7)});
+		}
+		DBApp.insertBatch("pf0", records0);
+		DBApp.createBitMapIndex("pf0", "g");
+		ScanCache.clear();
+		BufferPool.resetStats();
+		ArrayList<String[]> result0 = DBApp.selectIndex("pf0", new String[]{"g","h"}, new String[]{"g42","h0"});
+		assertTrue("A selective query should only read the pages holding its records.", BufferPool.getHits() + BufferPool.getMisses() <= 20);
+		ArrayList<String[]> expected0 = DBApp.select("pf0", new String[]{"g","h"}, new String[]{"g42","h0"});
+		assertEquals("Fetching by position should find every matching record.", result0.size(), expected0.size());
+		for(int i=0;i<expected0.size();i++)
+		{
+			assertEquals("Records should come back in table order.", Arrays.toString(result0.get(i)), Arrays.toString(expected0.get(i)));
+		}
+		CompressedBitmap ordinals0 = new CompressedBitmap();
+		ordinals0.add(5);
+		ordinals0.add(1999);
+		ordinals0.add(2000);
+		ArrayList<String[]> fetched0 = Catalog.get("pf0").fetch(ordinals0);
+		assertEquals("Positions past the end of the table should be ignored.", fetched0.size(), 2);
+		assertEquals("A position should map to its page and slot.", fetched0.get(1)[0], "1999");
+		//--------------------------------------------------------------------------
+
+		DBApp.dataPageSize = 2;
+		FileManager.reset();
+	}
+
+
+	@Test(timeout = 1000000)
+	public void HashIndexServesPointLookups_0() throws Exception
+	{
+		FileManager.reset();
+
+		DBApp.dataPageSize = 4;
+		String[] cols0 = {"id","name","g"};
+		DBApp.createTable("hx0", cols0);
+		for(int i=0;i<30;i++)
+		{
+			DBApp.insert("hx0", new String[]{""+i,"n"+i,"g"+(i%3)});
+		}
+		DBApp.createHashIndex("hx0", "id");
+		for(int i=30;i<50;i++)
+		{
+			DBApp.insert("hx0", new String[]{""+i,"n"+i,"g"+(i%3)});
+		}
+		ArrayList<String[]> records0 = new ArrayList<String[]>();
+		for(int i=50;i<100;i++)
+		{
+			records0.add(new String[]{""+i,"n"+i,"g"+(i%3)});
+		}
+		DBApp.insertBatch("hx0", records0);
+		DBApp.createBitMapIndex("hx0", "g");
+
+		ScanCache.clear();
+		BufferPool.resetStats();
+		ArrayList<String[]> result0 = DBApp.select("hx0", new String[]{"id"}, new String[]{"77"});
+		assertEquals("A point lookup should read a single page.", BufferPool.getHits() + BufferPool.getMisses(), 1L);
+		assertEquals("A point lookup should find its record.", result0.size(), 1);
+		assertEquals("A point lookup should find its record.", result0.get(0)[1], "n77");
+		assertTrue("A point lookup should keep the select trace.", DBApp.getLastTrace("hx0").startsWith("Select condition:[id]->[77], Records per page:[[19, 1]], records:1"));
+		assertEquals("Other conditions should still be checked.", DBApp.select("hx0", new String[]{"g","id"}, new String[]{"g1","77"}).size(), 0);
+		assertEquals("A missing value should select nothing.", DBApp.select("hx0", new String[]{"id"}, new String[]{"100"}).size(), 0);
+
+		BufferPool.resetStats();
+		ArrayList<String[]> result1 = DBApp.selectIndex("hx0", new String[]{"g","id","name"}, new String[]{"g2","35","n35"});
+		assertEquals("A hash index should serve selectIndex.", result1.size(), 1);
+		assertTrue("A hash indexed column should count as indexed.", DBApp.getLastTrace("hx0").contains("Indexed columns: [g, id], Indexed selection count: 1, Non Indexed: [name]"));
+		assertEquals("selectIndex should read a single page.", BufferPool.getHits() + BufferPool.getMisses(), 1L);
+
+		DBApp.flush("hx0");
+		IndexRegistry.clear();
+		Catalog.clear();
+		BufferPool.clear();
+		BufferPool.resetStats();
+		ArrayList<String[]> result2 = DBApp.select("hx0", new String[]{"id"}, new String[]{"3"});
+		assertEquals("The hash index should be persisted.", result2.size(), 1);
+		assertEquals("A reloaded hash index should still read a single page.", BufferPool.getHits() + BufferPool.getMisses(), 1L);
+		assertTrue("The hash index should be persisted.", DBApp.getLastTrace("hx0").contains("Records per page:[[0, 1]]"));
+		assertTrue("The hash index should be stored in the table's hash directory.", new File(FileManager.directory.getAbsolutePath()+ File.separator + "hx0"+ File.separator+"hash"+ File.separator+"id.db").exists());
+		//--------------------------------------------------------------------------
+		DBApp.createTable("hx1", new String[]{"a","a_hash","hash"});
+		for(int i=0;i<10;i++)
+		{
+			DBApp.insert("hx1", new String[]{"a"+(i%2),"h"+(i%5),"x"+(i%3)});
+		}
+		DBApp.createHashIndex("hx1", "a");
+		DBApp.createBitMapIndex("hx1", "a_hash");
+		DBApp.createBitMapIndex("hx1", "hash");
+		DBApp.flush("hx1");
+		IndexRegistry.clear();
+		assertEquals("A hash index should not clash with a bitmap index on a column named like its file.", DBApp.selectIndex("hx1", new String[]{"a","a_hash"}, new String[]{"a1","h3"}).size(), 1);
+		assertEquals("A bitmap index on a column named like the hash directory should still load.", DBApp.getValueBits("hx1", "hash", "x1"), "0100100100");
+		//--------------------------------------------------------------------------
+
+		DBApp.dataPageSize = 2;
+		FileManager.reset();
+	}
+
+
+	@Test(timeout = 1000000)
+	public void BTreeServesRangeSelects_0() throws Exception
+	{
+		FileManager.reset();
+
+		int order = DBApp.treeOrder;
+		int cacheSize = DBApp.treeNodeCacheSize;
+		DBApp.treeOrder = 4;
+		DBApp.treeNodeCacheSize = 8;
+		try
+		{
+			String[] cols0 = {"id","semester","gpa"};
+			DBApp.createTable("bt0", cols0);
+			Random random = new Random(7);
+			ArrayList<String[]> records0 = new ArrayList<String[]>();
+			for(int i=0;i<300;i++)
+			{
+				String[] record = new String[]{""+i,""+(1+random.nextInt(10)),(random.nextInt(40)/10.0)+""};
+				records0.add(record);
+				DBApp.insert("bt0", record);
+				if(i==150)
+				{
+					DBApp.createBTreeIndex("bt0", "gpa");
+				}
+			}
+			assertTrue("Nodes should split as the tree grows.", IndexRegistry.getTree("bt0", "gpa").getNodeCount() > 10);
+			assertTrue("Changed nodes should be written out to stay within the cache size.", IndexRegistry.getTree("bt0", "gpa").getCachedNodeCount() <= 8);
+
+			String[][] bounds0 = {{"1.0","2.5"},{"0.0","0.0"},{"3.9","5"},{"-1","0.5"},{"2.2","1.1"}};
+			for(String[] bound : bounds0)
+			{
+				double low = Double.parseDouble(bound[0]);
+				double high = Double.parseDouble(bound[1]);
+				int lt = 0, le = 0, gt = 0, ge = 0, between = 0;
+				for(String[] record : records0)
+				{
+					double gpa = Double.parseDouble(record[2]);
+					if(gpa<high) lt++;
+					if(gpa<=high) le++;
+					if(gpa>low) gt++;
+					if(gpa>=low) ge++;
+					if(gpa>=low && gpa<=high) between++;
+				}
+				assertEquals("A < select should find every smaller value.", DBApp.selectLessThan("bt0", "gpa", bound[1]).size(), lt);
+				assertEquals("A <= select should find every smaller or equal value.", DBApp.selectLessThanOrEqual("bt0", "gpa", bound[1]).size(), le);
+				assertEquals("A > select should find every larger value.", DBApp.selectGreaterThan("bt0", "gpa", bound[0]).size(), gt);
+				assertEquals("A >= select should find every larger or equal value.", DBApp.selectGreaterThanOrEqual("bt0", "gpa", bound[0]).size(), ge);
+				assertEquals("A between select should find every value in the range.", DBApp.selectBetween("bt0", "gpa", bound[0], bound[1]).size(), between);
+			}
+			assertTrue("An indexed range select should use the tree.", DBApp.getLastTrace("bt0").startsWith("Select range condition:[gpa>=2.2, gpa<=1.1], Indexed column: gpa, records:0"));
+
+			ArrayList<String[]> result0 = DBApp.selectRange("bt0", "gpa", "1.5", false, "2", true);
+			ArrayList<String[]> result1 = DBApp.selectRange("bt0", "id", "0", true, null, false);
+			assertEquals("An unindexed range select should scan every page.", result1.size(), 300);
+			assertTrue("An unindexed range select should scan every page.", DBApp.getLastTrace("bt0").startsWith("Select range condition:[id>=0], Records per page:[[0, 2], [1, 2]"));
+			ArrayList<String[]> expected0 = new ArrayList<String[]>();
+			for(String[] record : records0)
+			{
+				double gpa = Double.parseDouble(record[2]);
+				if(gpa>1.5 && gpa<=2)
+				{
+					expected0.add(record);
+				}
+			}
+			assertEquals("A range select should return records in table order.", result0.size(), expected0.size());
+			for(int i=0;i<expected0.size();i++)
+			{
+				assertEquals("A range select should return records in table order.", Arrays.toString(result0.get(i)), Arrays.toString(expected0.get(i)));
+			}
+			assertEquals("Semester ranges should compare numerically.", DBApp.selectBetween("bt0", "semester", "9", "10").size(), DBApp.selectGreaterThanOrEqual("bt0", "semester", "9").size());
+
+			DBApp.flush("bt0");
+			IndexRegistry.clear();
+			assertTrue("Tree nodes should be stored through the file manager.", new File(FileManager.directory.getAbsolutePath()+ File.separator + "bt0"+ File.separator+"tree"+ File.separator+"gpa"+ File.separator+"0.db").exists());
+			assertEquals("A reloaded tree should serve range selects.", DBApp.selectRange("bt0", "gpa", "1.5", false, "2", true).size(), expected0.size());
+			assertTrue("A reloaded tree should serve range selects.", DBApp.getLastTrace("bt0").contains("Indexed column: gpa"));
+			new File(FileManager.directory.getAbsolutePath()+ File.separator + "bt0"+ File.separator+"tree"+ File.separator+"gpa"+ File.separator+"1.db").delete();
+			IndexRegistry.clear();
+			boolean missing0 = false;
+			try
+			{
+				DBApp.selectRange("bt0", "gpa", "0", true, "4", true);
+			}
+			catch(IllegalStateException e)
+			{
+				missing0 = e.getMessage().contains("Missing node 1");
+			}
+			assertTrue("A missing tree node should fail with a clear error.", missing0);
+
+			DBApp.treeNodeCacheSize = 1;
+			DBApp.createTable("bt1", cols0);
+			for(int i=0;i<200;i++)
+			{
+				DBApp.insert("bt1", new String[]{""+i,""+(i%10),""+(i%37)});
+				if(i==50)
+				{
+					DBApp.createBTreeIndex("bt1", "id");
+				}
+			}
+			assertTrue("A one node cache should still hold at most one node.", IndexRegistry.getTree("bt1", "id").getCachedNodeCount() <= 1);
+			assertEquals("Leaves split under a one node cache should stay chained.", DBApp.selectGreaterThanOrEqual("bt1", "id", "0").size(), 200);
+			assertEquals("Leaves split under a one node cache should stay chained.", DBApp.selectBetween("bt1", "id", "20", "179").size(), 160);
+		}
+		finally
+		{
+			DBApp.treeOrder = order;
+			DBApp.treeNodeCacheSize = cacheSize;
+		}
+		//--------------------------------------------------------------------------
+
+		FileManager.reset();
+	}
+
+
+	@Test(timeout = 1000000)
+	public void BitSlicedIndexAnswersRangesAndAggregates_0() throws Exception
+	{
+		FileManager.reset();
+
+		String[] cols0 = {"id","major","gpa"};
+		DBApp.createTable("bs0", cols0);
+		String[] majors0 = {"CS","BI","MET"};
+		Random random = new Random(11);
+		ArrayList<String[]> records0 = new ArrayList<String[]>();
+		for(int i=0;i<400;i++)
+		{
+			String[] record = new String[]{""+i,majors0[random.nextInt(3)],(1+random.nextInt(300))/100.0+""};
+			records0.add(record);
+			DBApp.insert("bs0", record);
+			if(i==100)
+			{
+				DBApp.createBitMapIndex("bs0", "major");
+				DBApp.createBitSlicedIndex("bs0", "gpa");
+			}
+			if(i==200)
+			{
+				// a value below every earlier one moves the offset
+				record = new String[]{"n"+i,"CS","-0.25"};
+				records0.add(record);
+				DBApp.insert("bs0", record);
+			}
+		}
+
+		for(String major : new String[]{"CS","BI","ZZ"})
+		{
+			double sum = 0, min = Double.MAX_VALUE, max = -Double.MAX_VALUE, ids = 0;
+			int count = 0;
+			for(String[] record : records0)
+			{
+				if(record[1].equals(major))
+				{
+					double gpa = Double.parseDouble(record[2]);
+					sum += gpa;
+					min = Math.min(min, gpa);
+					max = Math.max(max, gpa);
+					ids += record[0].startsWith("n") ? 0 : Integer.parseInt(record[0]);
+					count++;
+				}
+			}
+			String[] cond0 = {"major"};
+			String[] vals0 = {major};
+			if(count==0)
+			{
+				assertTrue("An empty selection should have no sum.", DBApp.sum("bs0", "gpa", cond0, vals0)==null);
+				assertTrue("An empty selection should have no maximum.", DBApp.max("bs0", "gpa", cond0, vals0)==null);
+				continue;
+			}
+			assertTrue("The sum should match the records.", Math.abs(DBApp.sum("bs0", "gpa", cond0, vals0)-sum)<1e-6);
+			assertTrue("The sum should be computed from the slices.", DBApp.getLastTrace("bs0").contains("Bit-sliced: true, records:"+count));
+			assertTrue("The average should match the records.", Math.abs(DBApp.avg("bs0", "gpa", cond0, vals0)-sum/count)<1e-6);
+			assertTrue("The minimum should match the records.", Math.abs(DBApp.min("bs0", "gpa", cond0, vals0)-min)<1e-9);
+			assertTrue("The maximum should match the records.", Math.abs(DBApp.max("bs0", "gpa", cond0, vals0)-max)<1e-9);
+			assertTrue("A column without a bit-sliced index should be aggregated by reading the records.", Math.abs(DBApp.sum("bs0", "id", cond0, vals0)-ids)<1e-9);
+			assertTrue("A column without a bit-sliced index should be aggregated by reading the records.", DBApp.getLastTrace("bs0").contains("Bit-sliced: false"));
+		}
+		double total0 = 0;
+		for(String[] record : records0)
+		{
+			total0 += Double.parseDouble(record[2]);
+		}
+		assertTrue("Without conditions every record should be summed.", Math.abs(DBApp.sum("bs0", "gpa", new String[0], new String[0])-total0)<1e-6);
+		assertTrue("A condition on an unindexed column should be checked on the records.", Math.abs(DBApp.max("bs0", "gpa", new String[]{"id"}, new String[]{"7"})-Double.parseDouble(records0.get(7)[2]))<1e-9);
+
+		String[][] bounds0 = {{"1","2"},{"0.5","0.51"},{"-1","0"},{"2.995","3"},{"1.234","1.236"}};
+		for(String[] bound : bounds0)
+		{
+			double low = Double.parseDouble(bound[0]);
+			double high = Double.parseDouble(bound[1]);
+			int between = 0, open = 0;
+			for(String[] record : records0)
+			{
+				double gpa = Double.parseDouble(record[2]);
+				if(gpa>=low && gpa<=high) between++;
+				if(gpa>low && gpa<high) open++;
+			}
+			assertEquals("A between select should find every value in the range.", DBApp.selectBetween("bs0", "gpa", bound[0], bound[1]).size(), between);
+			assertTrue("A numeric range select should use the slices.", DBApp.getLastTrace("bs0").contains("Indexed column: gpa"));
+			assertEquals("An open range select should exclude its bounds.", DBApp.selectRange("bs0", "gpa", bound[0], false, bound[1], false).size(), open);
+		}
+		//--------------------------------------------------------------------------
+
+		FileManager.reset();
+	}
+
+
+	@Test(timeout = 1000000)
+	public void CompositeIndexServesCoveredSelects_0() throws Exception
+	{
+		FileManager.reset();
+
+		String[] cols0 = {"id","major","semester","gpa"};
+		DBApp.createTable("ci0", cols0);
+		for(int i=0;i<60;i++)
+		{
+			DBApp.insert("ci0", new String[]{""+i,"m"+(i%4),"s"+(i%5),"g"+(i%3)});
+		}
+		DBApp.createCompositeIndex("ci0", new String[]{"major","semester"});
+		for(int i=60;i<90;i++)
+		{
+			DBApp.insert("ci0", new String[]{""+i,"m"+(i%4),"s"+(i%5),"g"+(i%3)});
+		}
+		ArrayList<String[]> records0 = new ArrayList<String[]>();
+		for(int i=90;i<120;i++)
+		{
+			records0.add(new String[]{""+i,"m"+(i%4),"s"+(i%5),"g"+(i%3)});
+		}
+		DBApp.insertBatch("ci0", records0);
+		assertTrue("The composite index should be stored next to the table.", new File(FileManager.directory.getAbsolutePath()+ File.separator + "ci0"+ File.separator+"major+semester_composite.db").exists());
+
+		ArrayList<String[]> result0 = DBApp.selectIndex("ci0", new String[]{"gpa","semester","major"}, new String[]{"g1","s2","m3"});
+		assertTrue("A covering composite index should be used.", DBApp.getLastTrace("ci0").contains("Indexed columns: [major, semester], Indexed selection count: 6, Non Indexed: [gpa], Final count: 2"));
+		ArrayList<String[]> expected0 = DBApp.select("ci0", new String[]{"gpa","semester","major"}, new String[]{"g1","s2","m3"});
+		assertEquals("A composite lookup should match a full scan.", result0.size(), expected0.size());
+		for(int i=0;i<expected0.size();i++)
+		{
+			assertEquals("A composite lookup should match a full scan.", Arrays.toString(result0.get(i)), Arrays.toString(expected0.get(i)));
+		}
+
+		DBApp.selectIndex("ci0", new String[]{"major"}, new String[]{"m3"});
+		assertTrue("A composite index should not serve a query missing one of its columns.", !DBApp.getLastTrace("ci0").contains("Indexed columns"));
+
+		ScanCache.clear();
+		BufferPool.resetStats();
+		assertEquals("A combination that never occurs should select nothing.", DBApp.selectIndex("ci0", new String[]{"major","semester"}, new String[]{"m1","s9"}).size(), 0);
+		assertEquals("An empty composite lookup should not read any page.", BufferPool.getHits() + BufferPool.getMisses(), 0L);
+		assertTrue("Aggregates should filter through the composite index.", Math.abs(DBApp.sum("ci0", "id", new String[]{"semester","major"}, new String[]{"s2","m3"}) - (7+27+47+67+87+107)) < 1e-9);
+		DBApp.insert("ci0", new String[]{"200","m1",null,"g0"});
+		DBApp.insert("ci0", new String[]{"201","m1","","g0"});
+		ArrayList<String[]> result1 = DBApp.selectIndex("ci0", new String[]{"major","semester"}, new String[]{"m1",null});
+		assertEquals("A null value should get a composite key of its own.", result1.size(), 1);
+		assertEquals("A null value should get a composite key of its own.", result1.get(0)[0], "200");
+		ArrayList<String[]> result2 = DBApp.selectIndex("ci0", new String[]{"major","semester"}, new String[]{"m1",""});
+		assertEquals("A null value and an empty one should not share a key.", result2.size(), 1);
+		assertEquals("A null value and an empty one should not share a key.", result2.get(0)[0], "201");
+		//--------------------------------------------------------------------------
+
+		FileManager.reset();
+	}
+
+
+	@Test(timeout = 1000000)
+	public void IndexRegistryStaysWithinBudget_0() throws Exception
+	{
+		FileManager.reset();
+
+		long budget = DBApp.indexCacheBytes;
+		int batch = DBApp.indexFlushBatch;
+		try
+		{
+			String[] cols0 = {"a","b","c","d"};
+			DBApp.createTable("ir0", cols0);
+			for(int i=0;i<50;i++)
+			{
+				DBApp.insert("ir0", new String[]{"a"+i,"b"+(i%2),"c"+(i%3),"d"+(i%4)});
+			}
+			DBApp.createBitMapIndex("ir0", "b");
+			DBApp.createBitMapIndex("ir0", "c");
+			DBApp.createBitMapIndex("ir0", "d");
+
+			IndexRegistry.clear();
+			IndexRegistry.resetStats();
+			DBApp.selectIndex("ir0", new String[]{"a","b"}, new String[]{"a3","b1"});
+			DBApp.selectIndex("ir0", new String[]{"b","a"}, new String[]{"b1","a5"});
+			assertEquals("A column without an index should not be looked up on disk.", DBApp.getValueBits("ir0", "a", "a1"), "");
+			assertEquals("Each index should be read from disk once.", IndexRegistry.getLoads(), 1L);
+			DBApp.insert("ir0", new String[]{"a50","b0","c2","d2"});
+			assertEquals("Inserting should only read the indexes that exist.", IndexRegistry.getLoads(), 3L);
+
+			// a budget smaller than any index keeps only the one in use
+			DBApp.indexFlushBatch = 1000;
+			DBApp.indexCacheBytes = 1;
+			for(int i=51;i<60;i++)
+			{
+				DBApp.insert("ir0", new String[]{"a"+i,"b"+(i%2),"c"+(i%3),"d"+(i%4)});
+			}
+			assertTrue("Indexes over the budget should be evicted.", !IndexRegistry.isResident("ir0", "b") && !IndexRegistry.isResident("ir0", "c"));
+			assertTrue("The index in use should stay resident.", IndexRegistry.isResident("ir0", "d"));
+			StringBuilder expected0 = new StringBuilder();
+			for(int i=0;i<60;i++)
+			{
+				expected0.append(i%3==0 ? "1" : "0");
+			}
+			assertEquals("An evicted index should have been written first.", FileManager.loadTableIndex("ir0", "c").getBitString("c0"), expected0.toString());
+			assertEquals("An evicted index should be read back when needed.", DBApp.getValueBits("ir0", "c", "c0"), expected0.toString());
+			assertEquals("Selections should still see every record.", DBApp.selectIndex("ir0", new String[]{"b","c","d"}, new String[]{"b1","c0","d3"}).size(), 5);
+
+			DBApp.indexCacheBytes = budget;
+			DBApp.getValueBits("ir0", "b", "b1");
+			DBApp.getValueBits("ir0", "c", "c1");
+			assertTrue("Within the budget every index should stay resident.", IndexRegistry.isResident("ir0", "b") && IndexRegistry.isResident("ir0", "c"));
+			assertTrue("The resident indexes should be measured.", IndexRegistry.usedBytes() > 0);
+		}
+		finally
+		{
+			DBApp.indexCacheBytes = budget;
+			DBApp.indexFlushBatch = batch;
+		}
+		//--------------------------------------------------------------------------
+
+		FileManager.reset();
+	}
+
+
+	@Test(timeout = 1000000)
+	public void CreateBitMapIndexesScansOnce_0() throws Exception
+	{
+		FileManager.reset();
+
+		DBApp.dataPageSize = 5;
+		String[] cols0 = {"a","b","c","d"};
+		DBApp.createTable("mi0", cols0);
+		DBApp.createTable("mi1", cols0);
+		for(int i=0;i<100;i++)
+		{
+			String[] record = {"a"+i,"b"+(i%2),"c"+(i%3),"d"+(i%7)};
+			DBApp.insert("mi0", record);
+			DBApp.insert("mi1", record);
+		}
+		DBApp.createBitMapIndex("mi1", "b");
+		DBApp.createBitMapIndex("mi1", "c");
+		DBApp.createBitMapIndex("mi1", "d");
+		ScanCache.clear();
+		BufferPool.resetStats();
+		DBApp.createBitMapIndexes("mi0", new String[]{"b","c","x","d","b"});
+		assertEquals("Building several indexes should read each page once.", BufferPool.getHits() + BufferPool.getMisses(), 20);
+		assertEquals("Every existing column should be indexed once.", Catalog.get("mi0").indexedColumns.size(), 3);
+		assertTrue("Each index should be traced.", DBApp.getLastTrace("mi0").contains("Index created for column: d"));
+		String[][] values0 = {{"b","b1"},{"c","c0"},{"c","c2"},{"d","d6"}};
+		IndexRegistry.clear();
+		for(int i=0;i<values0.length;i++)
+		{
+			assertEquals("A shared scan should build the same index as a single one.", DBApp.getValueBits("mi0", values0[i][0], values0[i][1]), DBApp.getValueBits("mi1", values0[i][0], values0[i][1]));
+		}
+		ArrayList<String[]> result0 = DBApp.selectIndex("mi0", new String[]{"b","c","d"}, new String[]{"b0","c1","d4"});
+		assertEquals("The new indexes should serve selectIndex.", result0.size(), 3);
+		//--------------------------------------------------------------------------
+
+		DBApp.dataPageSize = 2;
+		FileManager.reset();
+	}
+
+
+	@Test(timeout = 1000000)
+	public void ParallelIndexBuildMatchesSequential_0() throws Exception
+	{
+		FileManager.reset();
+
+		DBApp.dataPageSize = 3;
+		int pages = DBApp.indexBuildPages;
+		boolean writeBack = DBApp.writeBack;
+		DBApp.indexBuildPages = 4;
+		DBApp.writeBack = true;
+		try
+		{
+			String[] cols0 = {"a","b","c"};
+			DBApp.createTable("pb0", cols0);
+			StringBuilder expected0 = new StringBuilder();
+			for(int i=0;i<1000;i++)
+			{
+				DBApp.insert("pb0", new String[]{"a"+i,"b"+(i%5),"c"+(i%17)});
+				expected0.append(i%17==3 ? '1' : '0');
+			}
+			DBApp.createBitMapIndex("pb0", "c");
+			DBApp.createBitMapIndex("pb0", "b");
+			assertEquals("Partial indexes over page ranges should merge into the full index.", DBApp.getValueBits("pb0", "c", "c3"), expected0.toString());
+			assertEquals("The merged index should cover every record.", DBApp.getValueBits("pb0", "b", "b4").length(), 1000);
+			assertEquals("The last page should be indexed.", DBApp.getValueBits("pb0", "b", "b4").charAt(999), '1');
+			ArrayList<String[]> result0 = DBApp.selectIndex("pb0", new String[]{"b","c"}, new String[]{"b2","c3"});
+			assertEquals("A parallel build should serve selectIndex.", result0.size(), DBApp.select("pb0", new String[]{"b","c"}, new String[]{"b2","c3"}).size());
+			DBApp.createTable("pb1", cols0);
+			DBApp.createBitMapIndex("pb1", "a");
+			assertEquals("An empty table should get an empty index.", DBApp.getValueBits("pb1", "a", "a0"), "");
+		}
+		finally
+		{
+			DBApp.indexBuildPages = pages;
+			DBApp.writeBack = writeBack;
+		}
+		//--------------------------------------------------------------------------
+
+		DBApp.dataPageSize = 2;
+		FileManager.reset();
+	}
+
+
+	@Test(timeout = 1000000)
+	public void IndexInsertsAppendToLog_0() throws Exception
+	{
+		FileManager.reset();
+
+		DBApp.dataPageSize = 4;
+		int batch = DBApp.indexFlushBatch;
+		int merge = DBApp.indexLogMergeEntries;
+		DBApp.indexFlushBatch = 1;
+		DBApp.indexLogMergeEntries = 1000;
+		try
+		{
+			String[] cols0 = {"a","b","c"};
+			DBApp.createTable("dl0", cols0);
+			StringBuilder expected0 = new StringBuilder();
+			for(int i=0;i<200;i++)
+			{
+				DBApp.insert("dl0", new String[]{"a"+i,"b"+(i%2),"c"+(i%3)});
+				expected0.append(i%3==1 ? '1' : '0');
+			}
+			DBApp.createBitMapIndex("dl0", "c");
+			File base0 = new File(FileManager.directory.getAbsolutePath()+ File.separator + "dl0"+ File.separator+"c.db");
+			File log0 = new File(FileManager.directory.getAbsolutePath()+ File.separator + "dl0"+ File.separator+"log"+ File.separator+"c.log");
+			long baseLength0 = base0.length();
+			long modified0 = base0.lastModified();
+			assertTrue("A new index should start without a log.", !log0.exists());
+			for(int i=200;i<220;i++)
+			{
+				DBApp.insert("dl0", new String[]{"a"+i,"b"+(i%2),"c"+(i%3)});
+				expected0.append(i%3==1 ? '1' : '0');
+			}
+			assertEquals("Inserting should not rewrite the index snapshot.", base0.length(), baseLength0);
+			assertEquals("Inserting should not touch the index snapshot.", base0.lastModified(), modified0);
+			assertTrue("Each insert should only append a few bytes to the log.", log0.length() > 0 && log0.length() <= 20 * 16);
+			IndexRegistry.clear();
+			assertEquals("Loading an index should replay its log.", FileManager.loadTableIndex("dl0", "c").getBitString("c1"), expected0.toString());
+			java.io.FileOutputStream torn0 = new java.io.FileOutputStream(log0, true);
+			torn0.write(new byte[]{0, 9, 'c'});
+			torn0.close();
+			assertEquals("A pair cut short should be ignored.", DBApp.getValueBits("dl0", "c", "c1"), expected0.toString());
+			assertEquals("A pair cut short should be dropped from the log.", log0.length(), 20L * 8);
+
+			DBApp.indexLogMergeEntries = 10;
+			for(int i=220;i<255;i++)
+			{
+				DBApp.insert("dl0", new String[]{"a"+i,"b"+(i%2),"c"+(i%3)});
+				expected0.append(i%3==1 ? '1' : '0');
+			}
+			IndexLog.await();
+			assertTrue("A merge should fold the log into a new snapshot.", base0.length() > baseLength0);
+			assertTrue("A finished merge should remove the log it folded.", !new File(FileManager.directory.getAbsolutePath()+ File.separator + "dl0"+ File.separator+"log"+ File.separator+"c.merging.log").exists());
+			assertTrue("Records logged after the merge should stay in the log.", log0.exists() && log0.length() < 10 * 16);
+			assertEquals("The merged snapshot and the log should hold every record.", FileManager.loadTableIndex("dl0", "c").getBitString("c1"), expected0.toString());
+			DBApp.createBitMapIndex("dl0", "c");
+			assertTrue("Rebuilding an index should drop its log.", !log0.exists());
+			for(int i=255;i<260;i++)
+			{
+				DBApp.insert("dl0", new String[]{"a"+i,"b"+(i%2),"c"+(i%3)});
+			}
+			BitmapIndex written0 = new BitmapIndex();
+			written0.updateSize(1);
+			written0.insert("c9", 0);
+			assertTrue("A merge should start once records are logged.", IndexLog.merge("dl0", "c"));
+			assertTrue("A full write should not wait for a merge.", FileManager.storeTableIndex("dl0", "c", written0));
+			IndexLog.await();
+			assertEquals("A merge finishing after a full write should keep the written snapshot.", FileManager.loadTableIndex("dl0", "c").getBitString("c9"), "1");
+			assertTrue("A merge finishing after a full write should not restore its log.", !log0.exists());
+
+			DBApp.indexLogMergeEntries = 1000;
+			DBApp.createTable("dl2", new String[]{"a","c"});
+			DBApp.insert("dl2", new String[]{"a0","c0"});
+			DBApp.createBitMapIndex("dl2", "c");
+			File log2 = IndexLog.file("dl2", "c");
+			File set2 = IndexLog.mergingFile("dl2", "c");
+			for(int i=1;i<6;i++)
+			{
+				DBApp.insert("dl2", new String[]{"a"+i,"c"+(i%2)});
+			}
+			assertTrue("The log should be set aside by hand.", log2.renameTo(set2));
+			for(int i=6;i<11;i++)
+			{
+				DBApp.insert("dl2", new String[]{"a"+i,"c"+(i%2)});
+			}
+			assertTrue("Folding the log of an interrupted merge should not report the current log as set aside.", !IndexLog.merge("dl2", "c"));
+			IndexLog.await();
+			assertTrue("The log of an interrupted merge should be folded.", !set2.exists());
+			assertTrue("The current log should be kept for the next merge.", log2.exists());
+			assertTrue("The current log should be merged on the next call.", IndexLog.merge("dl2", "c"));
+			IndexLog.await();
+			assertTrue("A finished merge should remove the log it folded.", !log2.exists() && !set2.exists());
+			assertEquals("The snapshot should hold the records of both logs.", FileManager.readTableIndex("dl2", "c").getBitString("c1"), "01010101010");
+
+			DBApp.createTable("dl1", new String[]{"a","trace"});
+			DBApp.insert("dl1", new String[]{"a0","t0"});
+			DBApp.createBitMapIndex("dl1", "trace");
+			for(int i=1;i<5;i++)
+			{
+				DBApp.insert("dl1", new String[]{"a"+i,"t"+(i%2)});
+			}
+			Catalog.clear();
+			String trace1 = DBApp.getFullTrace("dl1");
+			assertTrue("Indexing a column named trace should keep the table's trace.", trace1.startsWith("Table created name:dl1"));
+			assertTrue("Index logs should not be written into the trace.", trace1.contains("Index created for column: trace") && trace1.contains("Inserted: [a4, t0]"));
+			IndexRegistry.clear();
+			assertEquals("The index of a column named trace should replay its own log.", DBApp.getValueBits("dl1", "trace", "t0"), "10101");
+		}
+		finally
+		{
+			DBApp.indexFlushBatch = batch;
+			DBApp.indexLogMergeEntries = merge;
+		}
+		//--------------------------------------------------------------------------
+
+		DBApp.dataPageSize = 2;
+		FileManager.reset();
+	}
+
+
+	@Test(timeout = 1000000)
+	public void CountAnsweredFromBitmaps_0() throws Exception
+	{
+		FileManager.reset();
+
+		DBApp.dataPageSize = 10;
+		String[] cols0 = {"id","major","year","gpa"};
+		DBApp.createTable("ct0", cols0);
+		ArrayList<String[]> records0 = new ArrayList<String[]>();
+		for(int i=0;i<600;i++)
+		{
+			records0.add(new String[]{""+i,"m"+(i%4),"y"+(i%5),"g"+(i%6)});
+		}
+		DBApp.insertBatch("ct0", records0);
+		DBApp.createBitMapIndex("ct0", "major");
+		DBApp.createHashIndex("ct0", "year");
+		ScanCache.clear();
+		BufferPool.resetStats();
+		int count0 = DBApp.count("ct0", new String[]{"major","year"}, new String[]{"m1","y2"});
+		assertEquals("A count over indexed columns should be the popcount of the intersection.", count0, 30);
+		assertEquals("A count over indexed columns should not load any page.", BufferPool.getHits() + BufferPool.getMisses(), 0L);
+		assertTrue("The count should appear in the last trace.", DBApp.getLastTrace("ct0").contains("Count condition:[major, year]->[m1, y2], Indexed columns: [major, year], records:30"));
+		assertEquals("A value missing from the index should count nothing.", DBApp.count("ct0", new String[]{"major"}, new String[]{"m9"}), 0);
+		int count1 = DBApp.count("ct0", new String[]{"major","gpa"}, new String[]{"m2","g4"});
+		assertTrue("A partly indexed count should list both kinds of columns.", DBApp.getLastTrace("ct0").contains("Count condition:[major, gpa]->[m2, g4], Indexed columns: [major], Non Indexed: [gpa], records:"+count1));
+		assertEquals("Columns without an index should be checked on the candidates.", count1, DBApp.select("ct0", new String[]{"major","gpa"}, new String[]{"m2","g4"}).size());
+		ScanCache.clear();
+		BufferPool.resetStats();
+		int count2 = DBApp.count("ct0", new String[]{"gpa","id"}, new String[]{"g5","125"});
+		assertEquals("A count without indexes should scan the table.", count2, 1);
+		assertTrue("A scanning count should list no indexed column.", DBApp.getLastTrace("ct0").contains("Count condition:[gpa, id]->[g5, 125], Non Indexed: [gpa, id], records:1"));
+		assertEquals("A scanning count should read every page once.", BufferPool.getHits() + BufferPool.getMisses(), 60L);
+		assertEquals("A scanning count should count every match.", DBApp.count("ct0", new String[]{"gpa"}, new String[]{"g5"}), 100);
+		assertEquals("A count without conditions should count every record.", DBApp.count("ct0", new String[]{}, new String[]{}), 600);
+		//--------------------------------------------------------------------------
+
+		DBApp.dataPageSize = 2;
+		FileManager.reset();
+	}
+
+
+	@Test(timeout = 1000000)
+	public void InAndOrConditionsUseBitmapUnions_0() throws Exception
+	{
+		FileManager.reset();
+
+		DBApp.dataPageSize = 10;
+		String[] cols0 = {"id","major","year","gpa","name"};
+		DBApp.createTable("io0", cols0);
+		ArrayList<String[]> records0 = new ArrayList<String[]>();
+		for(int i=0;i<600;i++)
+		{
+			records0.add(new String[]{""+i,"m"+(i%4),"y"+(i%5),"g"+(i%60),"n"+(i%3)});
+		}
+		DBApp.insertBatch("io0", records0);
+		DBApp.createBitMapIndex("io0", "major");
+		DBApp.createHashIndex("io0", "year");
+		DBApp.createBitMapIndex("io0", "gpa");
+
+		Condition cond0 = Condition.and(Condition.in("major", "m1", "m3"), Condition.eq("year", "y2"));
+		ScanCache.clear();
+		BufferPool.resetStats();
+		assertEquals("An IN list over indexed columns should be counted from the bitmaps.", DBApp.count("io0", cond0), 60);
+		assertEquals("A count over indexed columns should not load any page.", BufferPool.getHits() + BufferPool.getMisses(), 0L);
+		ArrayList<String[]> result0 = DBApp.selectIndex("io0", cond0);
+		assertEquals("An IN list should match every listed value.", result0.size(), 60);
+		for(int i=0;i<result0.size();i++)
+		{
+			int id = Integer.parseInt(result0.get(i)[0]);
+			assertTrue("Every record should satisfy the condition.", id%2==1 && id%5==2);
+			assertTrue("Records should come back in table order.", i==0 || id > Integer.parseInt(result0.get(i-1)[0]));
+		}
+		assertTrue("The condition should appear in the last trace.", DBApp.getLastTrace("io0").contains("Select index condition:(major IN [m1, m3] AND year=y2), Indexed: true, records:60"));
+
+		Condition cond1 = Condition.or(Condition.eq("major", "m0"), Condition.in("year", "y1", "y9"));
+		int expected1 = 0;
+		for(int i=0;i<600;i++)
+		{
+			if(i%4==0 || i%5==1)
+				expected1++;
+		}
+		assertEquals("An OR across indexed columns should be a union.", DBApp.selectIndex("io0", cond1).size(), expected1);
+
+		Condition cond2 = Condition.and(Condition.eq("name", "n0"), Condition.in("gpa", "g3", "g8"), Condition.or(Condition.eq("major", "m0"), Condition.eq("major", "m3")));
+		ScanCache.clear();
+		BufferPool.resetStats();
+		ArrayList<String[]> result2 = DBApp.selectIndex("io0", cond2);
+		assertEquals("Unindexed parts should be checked on the indexed candidates.", result2.size(), 10);
+		assertEquals("Only the candidates' pages should be read.", BufferPool.getHits() + BufferPool.getMisses(), 10L);
+		assertTrue("A partly indexed condition should be traced as such.", DBApp.getLastTrace("io0").contains("Indexed: false, records:10"));
+
+		Condition cond3 = Condition.or(Condition.eq("name", "n1"), Condition.eq("major", "m2"));
+		assertEquals("An OR with an unindexed column should scan the table.", DBApp.count("io0", cond3), 200 + 150 - 50);
+		assertEquals("An empty IN list should match nothing.", DBApp.count("io0", Condition.in("major")), 0);
+		//--------------------------------------------------------------------------
+
+		DBApp.dataPageSize = 2;
+		FileManager.reset();
+	}
+
+
+	@Test(timeout = 1000000)
+	public void NotConditionsUseBitmapComplements_0() throws Exception
+	{
+		FileManager.reset();
+
+		DBApp.dataPageSize = 10;
+		String[] cols0 = {"id","major","year","name"};
+		DBApp.createTable("nc0", cols0);
+		ArrayList<String[]> records0 = new ArrayList<String[]>();
+		for(int i=0;i<600;i++)
+		{
+			records0.add(new String[]{""+i,"m"+(i%4),"y"+(i%5),"n"+(i%3)});
+		}
+		DBApp.insertBatch("nc0", records0);
+		DBApp.createBitMapIndex("nc0", "major");
+		DBApp.createHashIndex("nc0", "year");
+
+		ScanCache.clear();
+		BufferPool.resetStats();
+		assertEquals("An inequality should count the complement of the value's bitmap.", DBApp.count("nc0", Condition.ne("major", "m1")), 450);
+		assertEquals("A value missing from the index should leave every record.", DBApp.count("nc0", Condition.ne("major", "m9")), 600);
+		assertEquals("A complement over an indexed column should not load any page.", BufferPool.getHits() + BufferPool.getMisses(), 0L);
+		assertTrue("The inequality should appear in the last trace.", DBApp.getLastTrace("nc0").contains("Count condition:major!=m9, Indexed: true, records:600"));
+
+		Condition cond0 = Condition.and(Condition.notIn("major", "m0", "m2"), Condition.ne("year", "y0"));
+		ArrayList<String[]> result0 = DBApp.selectIndex("nc0", cond0);
+		assertEquals("NOT IN should exclude every listed value.", result0.size(), 240);
+		for(int i=0;i<result0.size();i++)
+		{
+			int id = Integer.parseInt(result0.get(i)[0]);
+			assertTrue("Every record should satisfy the condition.", id%2==1 && id%5!=0);
+		}
+		assertTrue("NOT IN should appear in the last trace.", DBApp.getLastTrace("nc0").contains("(major NOT IN [m0, m2] AND year!=y0), Indexed: true"));
+
+		Condition cond1 = Condition.not(Condition.or(Condition.eq("major", "m3"), Condition.eq("year", "y4")));
+		assertEquals("A negated union should be its complement.", DBApp.count("nc0", cond1), 600 - 150 - 120 + 30);
+
+		Condition cond2 = Condition.and(Condition.ne("name", "n0"), Condition.eq("major", "m0"));
+		ScanCache.clear();
+		BufferPool.resetStats();
+		assertEquals("An inequality over an unindexed column should be checked on the candidates.", DBApp.selectIndex("nc0", cond2).size(), 100);
+		assertEquals("Only the candidates' pages should be read.", BufferPool.getHits() + BufferPool.getMisses(), 60L);
+		assertEquals("An inequality without an index should scan the table.", DBApp.count("nc0", Condition.ne("name", "n1")), 400);
+
+		DBApp.insert("nc0", new String[]{"600","m1","y0","n0"});
+		DBApp.insert("nc0", new String[]{"601","m2","y1","n1"});
+		assertEquals("New records should join the live records.", DBApp.count("nc0", Condition.ne("major", "m1")), 451);
+		//--------------------------------------------------------------------------
+
+		DBApp.dataPageSize = 2;
+		FileManager.reset();
+	}
+
+
+	@Test(timeout = 1000000)
+	public void BitSlicedIndexStaysExact_0() throws Exception
+	{
+		FileManager.reset();
+
+		int maxScale = DBApp.bitSliceMaxScale;
+		try
+		{
+			String[] cols0 = {"id","gpa"};
+			DBApp.createTable("bx0", cols0);
+			DBApp.insert("bx0", new String[]{"0","3.5"});
+			DBApp.insert("bx0", new String[]{"1","2.1"});
+			DBApp.createBitSlicedIndex("bx0", "gpa");
+			DBApp.insert("bx0", new String[]{"2","2.46"});
+			assertEquals("A value with more digits should widen the scale.", DBApp.selectGreaterThanOrEqual("bx0", "gpa", "2.5").size(), 1);
+			assertTrue("A widened index should still serve ranges.", DBApp.getLastTrace("bx0").contains("Indexed column: gpa"));
+			assertTrue("The sum should keep every digit.", Math.abs(DBApp.sum("bx0", "gpa", new String[0], new String[0])-8.06)<1e-9);
+			assertTrue("A widened index should still serve aggregates.", DBApp.getLastTrace("bx0").contains("Bit-sliced: true"));
+			assertTrue("The minimum should keep every digit.", Math.abs(DBApp.min("bx0", "gpa", new String[0], new String[0])-2.1)<1e-9);
+
+			DBApp.bitSliceMaxScale = 2;
+			DBApp.insert("bx0", new String[]{"3","2.495"});
+			assertEquals("Past the maximum scale ranges should be read from the records.", DBApp.selectGreaterThanOrEqual("bx0", "gpa", "2.5").size(), 1);
+			assertTrue("A rounded index should not serve ranges.", !DBApp.getLastTrace("bx0").contains("Indexed column: gpa"));
+			assertTrue("The maximum should not be rounded.", Math.abs(DBApp.max("bx0", "gpa", new String[]{"id"}, new String[]{"3"})-2.495)<1e-9);
+			assertTrue("A rounded index should not serve aggregates.", DBApp.getLastTrace("bx0").contains("Bit-sliced: false"));
+			DBApp.bitSliceMaxScale = maxScale;
+
+			DBApp.createTable("bx1", cols0);
+			DBApp.createBitSlicedIndex("bx1", "gpa");
+			int n = 5000;
+			for(int i=n;i>0;i--)
+			{
+				DBApp.insert("bx1", new String[]{""+i,""+i});
+			}
+			assertEquals("Descending values should all be stored.", DBApp.selectBetween("bx1", "gpa", "100", "199").size(), 100);
+			assertTrue("Descending values should be stored exactly.", Math.abs(DBApp.min("bx1", "gpa", new String[0], new String[0])-1)<1e-9 && Math.abs(DBApp.max("bx1", "gpa", new String[0], new String[0])-n)<1e-9);
+			assertTrue("Descending values should sum exactly.", Math.abs(DBApp.sum("bx1", "gpa", new String[0], new String[0])-(double)n*(n+1)/2)<1e-6);
+			assertEquals("A text upper bound should order after every number.", DBApp.selectLessThan("bx1", "gpa", "abc").size(), n);
+			assertTrue("A text bound should still use the slices.", DBApp.getLastTrace("bx1").contains("Indexed column: gpa"));
+			assertEquals("A text lower bound should order after every number.", DBApp.selectGreaterThan("bx1", "gpa", "abc").size(), 0);
+			assertEquals("A bound only Double reads should be checked on the records.", DBApp.selectLessThan("bx1", "gpa", "1e1d").size(), DBApp.selectLessThan("bx1", "gpa", "10").size());
+
+			DBApp.createTable("bx2", cols0);
+			DBApp.createTable("bx3", cols0);
+			DBApp.createBitSlicedIndex("bx2", "gpa");
+			for(int i=0;i<20;i++)
+			{
+				DBApp.insert("bx2", new String[]{""+i,"900000000000000000"});
+				DBApp.insert("bx3", new String[]{""+i,"900000000000000000"});
+			}
+			assertTrue("Sums past the range of a long should not wrap around.", Math.abs(DBApp.sum("bx2", "gpa", new String[0], new String[0])/DBApp.sum("bx3", "gpa", new String[0], new String[0])-1)<1e-12);
+			assertTrue("Large sums should still come from the slices.", DBApp.getLastTrace("bx2").contains("Bit-sliced: true"));
+			assertTrue("Averages past the range of a long should not wrap around.", Math.abs(DBApp.avg("bx2", "gpa", new String[0], new String[0])-9e17)<1e3);
+		}
+		finally
+		{
+			DBApp.bitSliceMaxScale = maxScale;
+		}
+		//--------------------------------------------------------------------------
+
+		FileManager.reset();
+	}
+}
@@ -0,0 +1,525 @@
+package DBMS;
+import java.io.File;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertEquals;
+import java.util.*;
+import org.junit.Test;
+public class DBAppStorageTests
+{
+
+
+	@Test(timeout = 1000000)
+	public void BufferPoolServesRepeatedScans_0() throws Exception
+	{
+		FileManager.reset();
+
+		DBApp.dataPageSize = 2;
+		String[] cols0 = {"a","b","c"};
+		DBApp.createTable("bp0", cols0);
+		for(int i=0;i<20;i++)
+		{
+			DBApp.insert("bp0", new String[]{"a"+i,"b"+(i%2),"c"+(i%3)});
+		}
+		DBApp.select("bp0");
+		BufferPool.resetStats();
+		ScanCache.clear();
+		ArrayList<String[]> select0 = DBApp.select("bp0");
+		assertEquals("Scanning a table should return all of its records.", select0.size(), 20);
+		assertEquals("A repeated scan of a resident table should not miss the buffer pool.", BufferPool.getMisses(), 0);
+		assertEquals("A repeated scan should hit the buffer pool once per page.", BufferPool.getHits(), 10);
+		//--------------------------------------------------------------------------
+		new File(FileManager.directory.getAbsolutePath()+ File.separator + "bp0"+ File.separator+"3.db").delete();
+		BufferPool.resetStats();
+		assertEquals("A hit should not look at the page file.", DBApp.select("bp0", new String[]{"a"}, new String[]{"a7"}).size(), 1);
+		assertEquals("Validation should read the page files rather than the pool.", DBApp.validateRecords("bp0").size(), 2);
+		DBApp.recoverRecords("bp0", DBApp.validateRecords("bp0"));
+		BufferPool.clear();
+		assertEquals("A recovered page should be readable from disk.", DBApp.select("bp0").size(), 20);
+		//--------------------------------------------------------------------------
+
+		FileManager.reset();
+	}
+
+
+	@Test(timeout = 1000000)
+	public void BufferPoolRespectsBudget_0() throws Exception
+	{
+		FileManager.reset();
+
+		DBApp.dataPageSize = 2;
+		int budget = DBApp.bufferPoolSize;
+		DBApp.bufferPoolSize = 4;
+		try
+		{
+			String[] cols0 = {"a","b"};
+			DBApp.createTable("bp1", cols0);
+			for(int i=0;i<30;i++)
+			{
+				DBApp.insert("bp1", new String[]{"a"+i,"b"+i});
+			}
+			ArrayList<String[]> select0 = DBApp.select("bp1");
+			assertEquals("Scanning a table larger than the buffer pool should return all of its records.", select0.size(), 30);
+			assertTrue("The buffer pool should never hold more pages than its budget.", BufferPool.size() <= 4);
+			Page p = BufferPool.pin("bp1", 0);
+			for(int i=1;i<15;i++)
+			{
+				FileManager.loadTablePage("bp1", i);
+			}
+			BufferPool.resetStats();
+			assertTrue("A pinned page should not be evicted.", BufferPool.pin("bp1", 0) == p);
+			assertEquals("A pinned page should be served from the buffer pool.", BufferPool.getHits(), 1);
+			BufferPool.unpin("bp1", 0);
+			BufferPool.unpin("bp1", 0);
+		}
+		finally
+		{
+			DBApp.bufferPoolSize = budget;
+		}
+		//--------------------------------------------------------------------------
+
+		FileManager.reset();
+	}
+
+
+	@Test(timeout = 1000000)
+	public void WriteBackDefersPageWrites_0() throws Exception
+	{
+		FileManager.reset();
+
+		DBApp.dataPageSize = 100;
+		DBApp.writeBack = true;
+		long interval = DBApp.flushInterval;
+		DBApp.flushInterval = Long.MAX_VALUE;
+		try
+		{
+			String[] cols0 = {"a","b"};
+			DBApp.createTable("wb0", cols0);
+			BufferPool.resetStats();
+			for(int i=0;i<150;i++)
+			{
+				DBApp.insert("wb0", new String[]{"a"+i,"b"+i});
+			}
+			File page0 = new File(FileManager.directory.getAbsolutePath()+ File.separator + "wb0"+ File.separator+"0.db");
+			assertTrue("Dirty pages should not be written before a flush.", !page0.exists());
+			assertEquals("Dirty pages should still be visible to selects.", DBApp.select("wb0").size(), 150);
+			DBApp.flush("wb0");
+			assertTrue("Flushing a table should write its dirty pages.", page0.exists());
+			assertEquals("Each dirty page should be written once per flush.", BufferPool.getWrites(), 2);
+			assertEquals("No dirty pages should remain after a flush.", BufferPool.dirtyCount(), 0);
+			BufferPool.clear();
+			assertEquals("Flushed pages should be readable from disk.", DBApp.select("wb0").size(), 150);
+		}
+		finally
+		{
+			DBApp.writeBack = false;
+			DBApp.flushInterval = interval;
+			DBApp.dataPageSize = 2;
+		}
+		//--------------------------------------------------------------------------
+
+		FileManager.reset();
+	}
+
+
+	@Test(timeout = 1000000)
+	public void BinaryPageFormatRoundTrip_0() throws Exception
+	{
+		FileManager.reset();
+
+		DBApp.dataPageSize = 4;
+		Page p = new Page();
+		p.insert(new String[]{"1","stud1","CS","5","0.9"});
+		p.insert(new String[]{"2",null,"\u00e9t\u00e9","",""});
+		p.insert(new String[]{"3","stud3","CS","2","2.4"});
+		byte[] encoded = PageCodec.encode(p);
+		java.io.ByteArrayOutputStream bout = new java.io.ByteArrayOutputStream();
+		java.io.ObjectOutputStream oos = new java.io.ObjectOutputStream(bout);
+		oos.writeObject(p);
+		oos.close();
+		assertTrue("The binary page format should be smaller than Java serialization.", encoded.length * 3 < bout.size());
+		Page decoded = PageCodec.decode(java.nio.ByteBuffer.wrap(encoded));
+		assertEquals("Decoding a page should return all of its records.", decoded.select().size(), 3);
+		for(int i=0;i<3;i++)
+		{
+			assertEquals("Decoding a page should preserve its records.", Arrays.toString(decoded.select().get(i)), Arrays.toString(p.select().get(i)));
+		}
+		assertEquals("Decoding a single slot should return that record.", Arrays.toString(PageCodec.decodeRecord(java.nio.ByteBuffer.wrap(encoded), 2)), Arrays.toString(p.select().get(2)));
+		//--------------------------------------------------------------------------
+		DBApp.createTable("bf0", new String[]{"a","b"});
+		File page0 = new File(FileManager.directory.getAbsolutePath()+ File.separator + "bf0"+ File.separator+"0.db");
+		oos = new java.io.ObjectOutputStream(new java.io.FileOutputStream(page0));
+		oos.writeObject(p);
+		oos.close();
+		assertEquals("Pages written with Java serialization should still load.", FileManager.loadTablePage("bf0", 0).select().size(), 3);
+		assertEquals("Pages should keep the serial version of the original class.", java.io.ObjectStreamClass.lookup(Page.class).getSerialVersionUID(), 5657986611886508260L);
+		assertEquals("Tables should keep the serial version of the original class.", java.io.ObjectStreamClass.lookup(Table.class).getSerialVersionUID(), -619813885123387244L);
+		//--------------------------------------------------------------------------
+
+		DBApp.dataPageSize = 2;
+		FileManager.reset();
+	}
+
+
+	@Test(timeout = 1000000)
+	public void SegmentStorageKeepsPagesInOneFile_0() throws Exception
+	{
+		FileManager.reset();
+
+		DBApp.dataPageSize = 2;
+		DBApp.segmentStorage = true;
+		int slotSize = DBApp.segmentSlotSize;
+		int extentSlots = DBApp.segmentExtentSlots;
+		DBApp.segmentSlotSize = 64;
+		DBApp.segmentExtentSlots = 4;
+		try
+		{
+			String[] cols0 = {"a","b","c"};
+			DBApp.createTable("sg0", cols0);
+			for(int i=0;i<25;i++)
+			{
+				DBApp.insert("sg0", new String[]{"a"+i,"b"+(i%2),"c"+(i%3)});
+			}
+			DBApp.insert("sg0", new String[]{"a25","this value is far too long to fit in a single segment slot","c"});
+			File dir0 = new File(FileManager.directory.getAbsolutePath()+ File.separator + "sg0");
+			assertTrue("Pages should be stored in the segment file.", new File(dir0, SegmentFile.FILE_NAME).exists());
+			assertTrue("Pages that fit a slot should not get their own file.", !new File(dir0, "0.db").exists());
+			assertTrue("Pages that do not fit a slot should spill over into their own file.", new File(dir0, "12.db").exists());
+			assertEquals("The segment should grow by whole extents.", SegmentFile.get("sg0").capacity(), 16);
+			BufferPool.clear();
+			SegmentFile.closeAll();
+			ArrayList<String[]> select0 = DBApp.select("sg0");
+			assertEquals("A reopened segment should return all of its records.", select0.size(), 26);
+			assertEquals("A reopened segment should return records in insertion order.", select0.get(13)[0], "a13");
+			assertEquals("Spilled pages should be read back.", select0.get(25)[0], "a25");
+			ScanCache.clear();
+			BufferPool.resetStats();
+			assertEquals("A repeated scan of a segment should return all of its records.", DBApp.select("sg0").size(), 26);
+			assertEquals("A repeated scan of a segment should be served from the buffer pool.", BufferPool.getHits(), 13);
+			assertEquals("A repeated scan of a segment should not read the segment again.", BufferPool.getMisses(), 0);
+		}
+		finally
+		{
+			DBApp.segmentStorage = false;
+			DBApp.segmentSlotSize = slotSize;
+			DBApp.segmentExtentSlots = extentSlots;
+		}
+		//--------------------------------------------------------------------------
+
+		FileManager.reset();
+	}
+
+
+	@Test(timeout = 1000000)
+	public void CatalogServesReadsFromMemory_0() throws Exception
+	{
+		FileManager.reset();
+
+		DBApp.dataPageSize = 2;
+		long interval = DBApp.flushInterval;
+		DBApp.flushInterval = Long.MAX_VALUE;
+		try
+		{
+			String[] cols0 = {"a","b"};
+			DBApp.createTable("ct0", cols0);
+			for(int i=0;i<10;i++)
+			{
+				DBApp.insert("ct0", new String[]{"a"+i,"b"+(i%2)});
+			}
+			Catalog.resetStats();
+			DBApp.select("ct0");
+			DBApp.select("ct0", 1, 1);
+			DBApp.select("ct0", new String[]{"b"}, new String[]{"b1"});
+			DBApp.getLastTrace("ct0");
+			assertEquals("Reads of a resident table should not load the catalog.", Catalog.getLoads(), 0);
+			assertEquals("Reads of a resident table should not store the catalog.", Catalog.getStores(), 0);
+			assertTrue("Reads should not mark the table as dirty.", !Catalog.isDirty("ct0"));
+			Catalog.clear();
+			assertTrue("The trace should survive reloading the catalog entry.", DBApp.getLastTrace("ct0").contains("Select condition:[b]->[b1]"));
+			assertEquals("A reloaded catalog entry should keep its records count.", DBApp.select("ct0").size(), 10);
+		}
+		finally
+		{
+			DBApp.flushInterval = interval;
+		}
+		//--------------------------------------------------------------------------
+
+		FileManager.reset();
+	}
+
+
+	@Test(timeout = 1000000)
+	public void TraceLogKeepsCatalogConstantSize_0() throws Exception
+	{
+		FileManager.reset();
+
+		DBApp.dataPageSize = 2;
+		String[] cols0 = {"a","b"};
+		DBApp.createTable("tl0", cols0);
+		DBApp.insert("tl0", new String[]{"a0","b0"});
+		File table0 = new File(FileManager.directory.getAbsolutePath()+ File.separator + "tl0"+ File.separator+"tl0.db");
+		long size0 = table0.length();
+		for(int i=1;i<50;i++)
+		{
+			DBApp.insert("tl0", new String[]{"a"+i,"b"+i});
+			DBApp.select("tl0", new String[]{"a"}, new String[]{"a"+i});
+		}
+		assertTrue("The catalog file should not grow with the trace.", table0.length() < size0 + 16);
+		DBApp.insert("tl0", new String[]{"line\nbreak","b"});
+		Catalog.clear();
+		String lastTrace0 = DBApp.getLastTrace("tl0");
+		assertTrue("The last trace should be read back from the trace log.", lastTrace0.startsWith("Inserted: [line\nbreak, b]"));
+		String fullTrace0 = DBApp.getFullTrace("tl0");
+		assertTrue("The full trace should start with the table creation.", fullTrace0.startsWith("Table created name:tl0"));
+		assertTrue("The full trace should contain every operation.", fullTrace0.contains("Select condition:[a]->[a49]"));
+		assertTrue("The full trace should end with the table summary.", fullTrace0.endsWith("Records Count: 51, Indexed Columns: []"));
+		//--------------------------------------------------------------------------
+		DBApp.createTable("tl0", cols0);
+		assertTrue("Creating a table again should start a new trace.", DBApp.getFullTrace("tl0").startsWith("Table created name:tl0, columnsNames:[a, b]\nPages Count"));
+		//--------------------------------------------------------------------------
+		TraceLog.file("tl1").getParentFile().mkdirs();
+		new java.io.FileOutputStream(TraceLog.file("tl1")).close();
+		assertEquals("An empty trace log should have no last entry.", TraceLog.readLast("tl1"), null);
+		//--------------------------------------------------------------------------
+
+		FileManager.reset();
+	}
+
+
+	@Test(timeout = 1000000)
+	public void ScanCacheServesRepeatedScans_0() throws Exception
+	{
+		FileManager.reset();
+
+		DBApp.dataPageSize = 2;
+		String[] cols0 = {"a","b"};
+		DBApp.createTable("sc0", cols0);
+		for(int i=0;i<20;i++)
+		{
+			DBApp.insert("sc0", new String[]{"a"+i,"b"+i});
+		}
+		DBApp.select("sc0");
+		BufferPool.resetStats();
+		ArrayList<String[]> select0 = DBApp.select("sc0");
+		assertEquals("A cached scan should return all records.", select0.size(), 20);
+		assertEquals("A cached scan should not read any page.", BufferPool.getHits() + BufferPool.getMisses(), 0);
+		select0.clear();
+		assertEquals("Modifying a returned scan should not affect the cache.", DBApp.select("sc0").size(), 20);
+		DBApp.insert("sc0", new String[]{"a20","b20"});
+		assertTrue("Inserting should invalidate the cached scan.", ScanCache.get("sc0") == null || ScanCache.get("sc0").size() == 21);
+		assertEquals("A scan after an insert should include the new record.", DBApp.select("sc0").size(), 21);
+		//--------------------------------------------------------------------------
+		long budget = DBApp.scanCacheBytes;
+		DBApp.scanCacheBytes = 1024;
+		try
+		{
+			ScanCache.clear();
+			DBApp.select("sc0");
+			assertTrue("A scan larger than the budget should not be cached.", ScanCache.get("sc0") == null);
+			assertTrue("The cache should stay within its budget.", ScanCache.usedBytes() <= 1024);
+		}
+		finally
+		{
+			DBApp.scanCacheBytes = budget;
+		}
+		//--------------------------------------------------------------------------
+
+		FileManager.reset();
+	}
+
+
+	@Test(timeout = 1000000)
+	public void BatchInsertMatchesRowInserts_0() throws Exception
+	{
+		FileManager.reset();
+
+		DBApp.dataPageSize = 3;
+		String[] cols0 = {"a","b","c"};
+		DBApp.createTable("bt0", cols0);
+		DBApp.createTable("bt1", cols0);
+		ArrayList<String[]> records0 = new ArrayList<String[]>();
+		for(int i=0;i<40;i++)
+		{
+			records0.add(new String[]{"a"+i,"b"+(i%2),"c"+(i%3)});
+		}
+		DBApp.insert("bt0", records0.get(0));
+		DBApp.insert("bt1", records0.get(0));
+		DBApp.createBitMapIndex("bt0", "b");
+		DBApp.createBitMapIndex("bt1", "b");
+		for(int i=1;i<40;i++)
+		{
+			DBApp.insert("bt0", records0.get(i));
+		}
+		DBApp.insertBatch("bt1", records0.subList(1, 20));
+		DBApp.insertBatch("bt1", records0.subList(20, 40).iterator());
+		String trace0 = DBApp.getLastTrace("bt1");
+		assertTrue("A batch insert should appear in the last trace.", trace0.startsWith("Inserted batch: 20 records, at pages:6-13"));
+		assertTrue("A batch insert should report its throughput.", trace0.contains("throughput (records/sec):"));
+		ArrayList<String[]> select0 = DBApp.select("bt0");
+		ArrayList<String[]> select1 = DBApp.select("bt1");
+		assertEquals("A batch insert should insert every record.", select1.size(), 40);
+		for(int i=0;i<40;i++)
+		{
+			assertEquals("A batch insert should place records like row inserts.", Arrays.toString(select0.get(i)), Arrays.toString(select1.get(i)));
+			assertEquals("A batch insert should place records on the same pages as row inserts.", Arrays.toString(DBApp.select("bt1", i/3, i%3).get(0)), Arrays.toString(records0.get(i)));
+		}
+		assertEquals("A batch insert should update bitmap indexes.", DBApp.getValueBits("bt1", "b", "b1"), DBApp.getValueBits("bt0", "b", "b1"));
+		assertEquals("A batch insert should write its indexes.", FileManager.loadTableIndex("bt1", "b").getBitString("b0"), DBApp.getValueBits("bt0", "b", "b0"));
+		//--------------------------------------------------------------------------
+
+		DBApp.dataPageSize = 2;
+		FileManager.reset();
+	}
+
+
+	@Test(timeout = 1000000)
+	public void BulkLoadMatchesRowInserts_0() throws Exception
+	{
+		FileManager.reset();
+
+		DBApp.dataPageSize = 3;
+		String[] cols0 = {"a","b","c"};
+		DBApp.createTable("bl0", cols0);
+		DBApp.createTable("bl1", cols0);
+		File csv0 = File.createTempFile("bl1", ".csv");
+		java.io.PrintWriter out0 = new java.io.PrintWriter(csv0, "UTF-8");
+		out0.print("a,b,c\r\n");
+		for(int i=0;i<1000;i++)
+		{
+			String[] record = {"a"+i,"b"+(i%2),"c"+(i%3)};
+			DBApp.insert("bl0", record);
+			if(i >= 2)
+				out0.print(record[0]+","+record[1]+","+record[2]+(i%2==0 ? "\r\n" : "\n"));
+		}
+		out0.close();
+		DBApp.insert("bl1", new String[]{"a0","b0","c0"});
+		DBApp.insert("bl1", new String[]{"a1","b1","c1"});
+		DBApp.createBitMapIndex("bl0", "b");
+		DBApp.createBitMapIndex("bl0", "c");
+		DBApp.createBitMapIndex("bl1", "b");
+		int loaded0 = DBApp.bulkLoad("bl1", csv0.getAbsolutePath(), ',', true, new String[]{"c"});
+		csv0.delete();
+		assertEquals("A bulk load should report the number of loaded records.", loaded0, 998);
+		assertTrue("A bulk load should appear in the last trace.", DBApp.getLastTrace("bl1").contains("Index created for column: c"));
+		BufferPool.clear();
+		ScanCache.clear();
+		ArrayList<String[]> select0 = DBApp.select("bl0");
+		ArrayList<String[]> select1 = DBApp.select("bl1");
+		assertEquals("A bulk load should insert every record.", select1.size(), 1000);
+		for(int i=0;i<1000;i++)
+		{
+			assertEquals("A bulk load should place records like row inserts.", Arrays.toString(select0.get(i)), Arrays.toString(select1.get(i)));
+		}
+		assertEquals("A bulk load should keep existing indexes up to date.", DBApp.getValueBits("bl1", "b", "b1"), DBApp.getValueBits("bl0", "b", "b1"));
+		assertEquals("A bulk load should build requested indexes.", DBApp.getValueBits("bl1", "c", "c2"), DBApp.getValueBits("bl0", "c", "c2"));
+		String[] files0 = new File(FileManager.directory, "bl0").list();
+		String[] files1 = new File(FileManager.directory, "bl1").list();
+		Arrays.sort(files0);
+		Arrays.sort(files1);
+		assertEquals("A bulk load should write the same files as row inserts.", Arrays.toString(files0).replace("bl0", "bl1"), Arrays.toString(files1));
+		//--------------------------------------------------------------------------
+		DBApp.createTable("bl2", cols0);
+		File csv1 = File.createTempFile("bl2", ".csv");
+		out0 = new java.io.PrintWriter(csv1, "UTF-8");
+		for(int i=0;i<10;i++)
+		{
+			out0.println("x"+i+";y;z"+(i%4));
+		}
+		out0.close();
+		assertEquals("A bulk load into an empty table should load every record.", DBApp.bulkLoad("bl2", csv1.getAbsolutePath(), ';', false, new String[]{"c"}), 10);
+		csv1.delete();
+		assertEquals("A bulk load into an empty table should build requested indexes while loading.", DBApp.getValueBits("bl2", "c", "z1"), "0100010001");
+		assertTrue("A bulk load should appear in the last trace.", DBApp.getLastTrace("bl2").startsWith("Bulk loaded: 10 records"));
+		//--------------------------------------------------------------------------
+
+		DBApp.dataPageSize = 2;
+		FileManager.reset();
+	}
+
+
+	@Test(timeout = 1000000)
+	public void BulkLoadRejectsMalformedFile_0() throws Exception
+	{
+		FileManager.reset();
+
+		DBApp.dataPageSize = 3;
+		String[] cols0 = {"a","b","c"};
+		DBApp.createTable("bf0", cols0);
+		DBApp.insert("bf0", new String[]{"a0","b0","c0"});
+		DBApp.insert("bf0", new String[]{"a1","b1","c1"});
+		DBApp.createBitMapIndex("bf0", "b");
+		String trace0 = DBApp.getLastTrace("bf0");
+		File csv0 = File.createTempFile("bf0", ".csv");
+		java.io.PrintWriter out0 = new java.io.PrintWriter(csv0, "UTF-8");
+		for(int i=2;i<20;i++)
+		{
+			out0.println("a"+i+",b"+(i%2)+(i==15 ? "" : ",c"+(i%3)));
+		}
+		out0.close();
+		boolean failed0 = false;
+		try
+		{
+			DBApp.bulkLoad("bf0", csv0.getAbsolutePath(), ',', false, null);
+		}
+		catch(java.io.IOException e)
+		{
+			failed0 = true;
+		}
+		csv0.delete();
+		assertTrue("A bulk load with a malformed line should fail.", failed0);
+		Table t0 = Catalog.get("bf0");
+		assertEquals("A failed bulk load should not count any records.", t0.recordsCount, 2);
+		assertEquals("A failed bulk load should not add pages.", t0.pageCount, 1);
+		assertEquals("A failed bulk load should not add a trace.", DBApp.getLastTrace("bf0"), trace0);
+		assertEquals("A failed bulk load should leave indexes unchanged.", DBApp.getValueBits("bf0", "b", "b0"), "10");
+		DBApp.insert("bf0", new String[]{"a2","b0","c2"});
+		assertEquals("Inserts after a failed bulk load should follow the old records.", DBApp.select("bf0").size(), 3);
+		assertEquals("Inserts after a failed bulk load should get the next ordinals.", DBApp.getValueBits("bf0", "b", "b0"), "101");
+		//--------------------------------------------------------------------------
+
+		DBApp.dataPageSize = 2;
+		FileManager.reset();
+	}
+
+
+	@Test(timeout = 1000000)
+	public void WriteBackKeepsPagesThatFailToWrite_0() throws Exception
+	{
+		FileManager.reset();
+
+		DBApp.dataPageSize = 2;
+		DBApp.writeBack = true;
+		long interval = DBApp.flushInterval;
+		int size = DBApp.bufferPoolSize;
+		DBApp.flushInterval = Long.MAX_VALUE;
+		try
+		{
+			String[] cols0 = {"a","b"};
+			DBApp.createTable("wf0", cols0);
+			DBApp.insert("wf0", new String[]{"a0","b0"});
+			// a directory where the page file belongs makes its write fail
+			File page0 = new File(FileManager.directory.getAbsolutePath()+ File.separator + "wf0"+ File.separator+"0.db");
+			page0.mkdirs();
+			assertTrue("A flush should report a page it could not write.", !BufferPool.flush("wf0"));
+			assertEquals("A page that failed to write should stay dirty.", BufferPool.dirtyCount(), 1);
+			DBApp.bufferPoolSize = 1;
+			DBApp.insert("wf0", new String[]{"a1","b1"});
+			DBApp.insert("wf0", new String[]{"a2","b2"});
+			assertEquals("A page that failed to write should not be evicted.", BufferPool.dirtyCount(), 1);
+			assertEquals("The pool should keep the unwritten page.", BufferPool.size(), 1);
+			page0.delete();
+			assertTrue("A flush should succeed once the page can be written.", BufferPool.flush("wf0"));
+			assertEquals("No dirty pages should remain after a successful flush.", BufferPool.dirtyCount(), 0);
+			BufferPool.clear();
+			assertEquals("The page kept through the failed writes should not lose records.", DBApp.select("wf0").size(), 3);
+		}
+		finally
+		{
+			DBApp.writeBack = false;
+			DBApp.flushInterval = interval;
+			DBApp.bufferPoolSize = size;
+		}
+		//--------------------------------------------------------------------------
+
+		FileManager.reset();
+	}
+}
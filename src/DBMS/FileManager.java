@@ -1,10 +1,15 @@
 package DBMS;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.concurrent.TimeUnit;
@@ -64,21 +69,40 @@ public class FileManager {
 	}
 
 	public static boolean storeTablePage(String tableName, int pageNumber, Page p) {
+		ScanCache.invalidate(tableName);
+		if (DBApp.writeBack && BufferPool.markDirty(tableName, pageNumber, p)) {
+			return true;
+		}
+		if (writeTablePage(tableName, pageNumber, p)) {
+			BufferPool.put(tableName, pageNumber, p);
+			return true;
+		}
+		return false;
+	}
+
+	static boolean writeTablePage(String tableName, int pageNumber, Page p) {
 		// try {
 		// TimeUnit.MILLISECONDS.sleep(1);
 		// } catch (InterruptedException e1) {
 		// // TODO Auto-generated catch block
 		//// e1.printStackTrace();
 		// }
+		byte[] encoded = PageCodec.encode(p);
+		if (DBApp.segmentStorage || SegmentFile.get(tableName) != null) {
+			SegmentFile seg = SegmentFile.create(tableName);
+			if (seg != null && seg.write(pageNumber, encoded)) {
+				return true;
+			}
+			// pages larger than a slot spill over into their own file
+		}
 		File tableDirectory = new File(directory, tableName);
 		tableDirectory.mkdir();
 		File fl = new File(tableDirectory, "" + pageNumber + ".db");
 
 		try {
 			FileOutputStream fout = new FileOutputStream(fl);
-			ObjectOutputStream oos = new ObjectOutputStream(fout);
-			oos.writeObject(p);
-			oos.close();
+			fout.write(encoded);
+			fout.close();
 			return true;
 		} catch (Exception e) {
 			// TODO Auto-generated catch block
@@ -88,19 +112,46 @@ public class FileManager {
 	}
 
 	public static Page loadTablePage(String tableName, int pageNumber) {
+		Page res = BufferPool.pin(tableName, pageNumber);
+		BufferPool.unpin(tableName, pageNumber);
+		return res;
+	}
+
+	// Reads a page for a scan that may run on several threads at once; see
+	// BufferPool.peek.
+	public static Page scanTablePage(String tableName, int pageNumber) {
+		Page res = BufferPool.peek(tableName, pageNumber);
+		return res != null ? res : readTablePage(tableName, pageNumber);
+	}
+
+	static File pageFile(String tableName, int pageNumber) {
+		return new File(new File(directory, tableName), "" + pageNumber + ".db");
+	}
+
+	static Page readTablePage(String tableName, int pageNumber) {
 		// try {
 		// TimeUnit.MILLISECONDS.sleep(1);
 		// } catch (InterruptedException e1) {
 		// // TODO Auto-generated catch block
 		// e1.printStackTrace();
 		// }
-		File tableDirectory = new File(directory, tableName);
-		File fl = new File(tableDirectory, "" + pageNumber + ".db");
+		SegmentFile seg = SegmentFile.get(tableName);
+		if (seg != null) {
+			Page p = seg.read(pageNumber);
+			if (p != null) {
+				return p;
+			}
+		}
+		File fl = pageFile(tableName, pageNumber);
 
 		Page res = null;
 		try {
-			FileInputStream fin = new FileInputStream(fl);
-			ObjectInputStream ois = new ObjectInputStream(fin);
+			ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(fl.toPath()));
+			if (PageCodec.isEncoded(buf)) {
+				return PageCodec.decode(buf);
+			}
+			// pages written before the binary format are still Java serialized
+			ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(buf.array()));
 			res = (Page) ois.readObject();
 			ois.close();
 		} catch (Exception e) {
@@ -120,21 +171,41 @@ public class FileManager {
 		File tableDirectory = new File(directory, tableName);
 		tableDirectory.mkdir();
 		File fl = new File(tableDirectory, "" + columnName + ".db");
+		File tmp = new File(tableDirectory, "" + columnName + ".write.tmp");
 
 		try {
-			FileOutputStream fout = new FileOutputStream(fl);
+			FileOutputStream fout = new FileOutputStream(tmp);
 			ObjectOutputStream oos = new ObjectOutputStream(fout);
 			oos.writeObject(b);
 			oos.close();
+			// the snapshot and its logs change together, so a merge of this index
+			// finishing later finds its log gone and drops its older snapshot
+			synchronized (IndexLog.class) {
+				Files.move(tmp.toPath(), fl.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+				IndexLog.clear(tableName, columnName);
+			}
 			return true;
 		} catch (Exception e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
+			tmp.delete();
 		}
 		return false;
 	}
 
+	// The index's snapshot with the records logged since replayed over it.
 	public static BitmapIndex loadTableIndex(String tableName, String columnName) {
+		synchronized (IndexLog.class) {
+			BitmapIndex res = readTableIndex(tableName, columnName);
+			if (res != null) {
+				IndexLog.replay(tableName, columnName, res);
+			}
+			return res;
+		}
+	}
+
+	static BitmapIndex readTableIndex(String tableName, String columnName) {
 		// try {
 		// TimeUnit.MILLISECONDS.sleep(1);
 		// } catch (InterruptedException e1) {
@@ -157,6 +228,148 @@ public class FileManager {
 		return res;
 	}
 
+	// Hash indexes live in a hash directory of their own, so their files cannot
+	// clash with the bitmap index of any column.
+	static File hashIndexFile(String tableName, String columnName) {
+		return new File(new File(new File(directory, tableName), "hash"), columnName + ".db");
+	}
+
+	public static boolean storeTableHashIndex(String tableName, String columnName, HashIndex h) {
+		File fl = hashIndexFile(tableName, columnName);
+		fl.getParentFile().mkdirs();
+
+		try {
+			FileOutputStream fout = new FileOutputStream(fl);
+			ObjectOutputStream oos = new ObjectOutputStream(fout);
+			oos.writeObject(h);
+			oos.close();
+			return true;
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		return false;
+	}
+
+	public static HashIndex loadTableHashIndex(String tableName, String columnName) {
+		File fl = hashIndexFile(tableName, columnName);
+
+		HashIndex res = null;
+		try {
+			FileInputStream fin = new FileInputStream(fl);
+			ObjectInputStream ois = new ObjectInputStream(fin);
+			res = (HashIndex) ois.readObject();
+			ois.close();
+		} catch (Exception e) {
+			// e.printStackTrace();
+		}
+		return res;
+	}
+
+	// A B+ tree lives in tree/<column>: its header, and one file per node named
+	// by number, so none of its files can clash with another column's index.
+	static File treeDirectory(String tableName, String columnName) {
+		return new File(new File(new File(directory, tableName), "tree"), columnName);
+	}
+
+	public static boolean storeTableTree(String tableName, String columnName, BPlusTree tree) {
+		File fl = new File(treeDirectory(tableName, columnName), "header.db");
+		fl.getParentFile().mkdirs();
+
+		try {
+			FileOutputStream fout = new FileOutputStream(fl);
+			ObjectOutputStream oos = new ObjectOutputStream(fout);
+			oos.writeObject(tree);
+			oos.close();
+			return true;
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		return false;
+	}
+
+	public static BPlusTree loadTableTree(String tableName, String columnName) {
+		File fl = new File(treeDirectory(tableName, columnName), "header.db");
+
+		BPlusTree res = null;
+		try {
+			FileInputStream fin = new FileInputStream(fl);
+			ObjectInputStream ois = new ObjectInputStream(fin);
+			res = (BPlusTree) ois.readObject();
+			ois.close();
+		} catch (Exception e) {
+			// e.printStackTrace();
+		}
+		return res;
+	}
+
+	// Bit-sliced indexes live in a bsi directory of their own, like hash indexes.
+	static File bitSlicedIndexFile(String tableName, String columnName) {
+		return new File(new File(new File(directory, tableName), "bsi"), columnName + ".db");
+	}
+
+	public static boolean storeTableBitSlicedIndex(String tableName, String columnName, BitSlicedIndex b) {
+		File fl = bitSlicedIndexFile(tableName, columnName);
+		fl.getParentFile().mkdirs();
+
+		try {
+			FileOutputStream fout = new FileOutputStream(fl);
+			ObjectOutputStream oos = new ObjectOutputStream(fout);
+			oos.writeObject(b);
+			oos.close();
+			return true;
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		return false;
+	}
+
+	public static BitSlicedIndex loadTableBitSlicedIndex(String tableName, String columnName) {
+		File fl = bitSlicedIndexFile(tableName, columnName);
+
+		BitSlicedIndex res = null;
+		try {
+			FileInputStream fin = new FileInputStream(fl);
+			ObjectInputStream ois = new ObjectInputStream(fin);
+			res = (BitSlicedIndex) ois.readObject();
+			ois.close();
+		} catch (Exception e) {
+			// e.printStackTrace();
+		}
+		return res;
+	}
+
+	public static boolean storeTreeNode(String tableName, String columnName, int nodeNumber, BPlusTree.Node n) {
+		File treeDirectory = treeDirectory(tableName, columnName);
+		treeDirectory.mkdirs();
+		File fl = new File(treeDirectory, "" + nodeNumber + ".db");
+
+		try {
+			FileOutputStream fout = new FileOutputStream(fl);
+			ObjectOutputStream oos = new ObjectOutputStream(fout);
+			oos.writeObject(n);
+			oos.close();
+			return true;
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		return false;
+	}
+
+	public static BPlusTree.Node loadTreeNode(String tableName, String columnName, int nodeNumber) {
+		File fl = new File(treeDirectory(tableName, columnName), "" + nodeNumber + ".db");
+
+		BPlusTree.Node res = null;
+		try {
+			FileInputStream fin = new FileInputStream(fl);
+			ObjectInputStream ois = new ObjectInputStream(fin);
+			res = (BPlusTree.Node) ois.readObject();
+			ois.close();
+		} catch (Exception e) {
+			// e.printStackTrace();
+		}
+		return res;
+	}
+
 	private static void deleteDir(File file) {
 		File[] contents = file.listFiles();
 		if (contents != null) {
@@ -168,13 +381,19 @@ public class FileManager {
 	}
 
 	public static void reset() {
+		BufferPool.clear();
+		Catalog.clear();
+		ScanCache.clear();
+		IndexRegistry.clear();
+		IndexLog.await();
+		SegmentFile.closeAll();
 		deleteDir(directory);
 		directory.mkdir();
 	}
 
 	private static String traceDir(File file) {
 		String res = file.getName();
-		if (!file.getName().endsWith(".db")) {
+		if (file.isDirectory()) {
 			res += "{ ";
 		}
 		File[] contents = file.listFiles();
@@ -184,7 +403,7 @@ public class FileManager {
 				res += traceDir(f) + " ";
 			}
 		}
-		if (!file.getName().endsWith(".db")) {
+		if (file.isDirectory()) {
 			res += "}";
 		}
 		return res;
@@ -0,0 +1,73 @@
+package DBMS;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class HashIndex implements Serializable {
+    private static final long serialVersionUID = 7603491419849095478L;
+    // Record pointers of one value, packed as page, slot pairs in insertion order
+    private static class Pointers implements Serializable {
+        private static final long serialVersionUID = 5673860264686706713L;
+        int[] data = new int[2];
+        int size;
+
+        void add(int pageNumber, int slot) {
+            if (size * 2 == data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[size * 2] = pageNumber;
+            data[size * 2 + 1] = slot;
+            size++;
+        }
+    }
+
+    private HashMap<String, Pointers> indexMap;
+    private int size;
+
+    public HashIndex() {
+        this.indexMap = new HashMap<>();
+        this.size = 0;
+    }
+
+    public void insert(String value, int pageNumber, int slot) {
+        indexMap.computeIfAbsent(value, k -> new Pointers()).add(pageNumber, slot);
+        size++;
+    }
+
+    // The pointers of a value as page, slot pairs, in page order.
+    public int[] getPointers(String value) {
+        Pointers p = indexMap.get(value);
+        if (p == null) {
+            return new int[0];
+        }
+        return Arrays.copyOf(p.data, p.size * 2);
+    }
+
+    public int count(String value) {
+        Pointers p = indexMap.get(value);
+        return p == null ? 0 : p.size;
+    }
+
+    // The value's records as ordinals, for combining with bitmap indexes.
+    public CompressedBitmap getBitmap(String value) {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        Pointers p = indexMap.get(value);
+        if (p != null) {
+            for (int i = 0; i < p.size; i++) {
+                bitmap.add(Table.ordinal(p.data[i * 2], p.data[i * 2 + 1]));
+            }
+        }
+        return bitmap;
+    }
+
+    // Rough heap size of the index, for the IndexRegistry memory budget.
+    public long sizeInBytes() {
+        long res = 64;
+        for (Map.Entry<String, Pointers> e : indexMap.entrySet()) {
+            res += 96 + 2L * e.getKey().length() + 4L * e.getValue().data.length;
+        }
+        return res;
+    }
+}
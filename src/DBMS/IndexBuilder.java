@@ -0,0 +1,76 @@
+package DBMS;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Builds bitmap indexes on some of a table's columns from a range of its pages.
+// Ranges longer than DBApp.indexBuildPages are split in half and built in
+// parallel on a pool of DBApp.indexBuildThreads threads owned by the build, so
+// the blocking page loads do not hold up the common ForkJoinPool. The partial
+// indexes are merged with a bitwise OR. Record i of page p gets the ordinal
+// Table.ordinal(p, i), the position Table.fetch reads it back from.
+public class IndexBuilder extends RecursiveTask<BitmapIndex[]> {
+
+	private static final long serialVersionUID = 3427775087522770391L;
+
+	private final String tableName;
+	private final int[] columns;
+	private final int from;
+	private final int to;
+
+	private IndexBuilder(String tableName, int[] columns, int from, int to) {
+		this.tableName = tableName;
+		this.columns = columns;
+		this.from = from;
+		this.to = to;
+	}
+
+	// One index per entry of columns, over every page of the table.
+	public static BitmapIndex[] build(Table t, int[] columns) {
+		ForkJoinPool pool = new ForkJoinPool(Math.max(DBApp.indexBuildThreads, 1));
+		BitmapIndex[] res;
+		try {
+			res = pool.invoke(new IndexBuilder(t.name, columns, 0, t.pageCount));
+		} finally {
+			pool.shutdown();
+		}
+		for (BitmapIndex index : res) {
+			index.updateSize(t.recordsCount);
+		}
+		return res;
+	}
+
+	protected BitmapIndex[] compute() {
+		if (to - from > Math.max(DBApp.indexBuildPages, 1)) {
+			int mid = (from + to) >>> 1;
+			IndexBuilder left = new IndexBuilder(tableName, columns, from, mid);
+			IndexBuilder right = new IndexBuilder(tableName, columns, mid, to);
+			left.fork();
+			BitmapIndex[] res = right.compute();
+			BitmapIndex[] head = left.join();
+			for (int j = 0; j < res.length; j++) {
+				head[j].merge(res[j]);
+			}
+			return head;
+		}
+
+		BitmapIndex[] res = new BitmapIndex[columns.length];
+		for (int j = 0; j < res.length; j++) {
+			res[j] = new BitmapIndex();
+		}
+		for (int i = from; i < to; i++) {
+			Page p = FileManager.scanTablePage(tableName, i);
+			if (p == null) {
+				continue;
+			}
+			ArrayList<String[]> records = p.select();
+			for (int r = 0; r < records.size(); r++) {
+				for (int j = 0; j < res.length; j++) {
+					res[j].insert(records.get(r)[columns[j]], Table.ordinal(i, r));
+				}
+			}
+		}
+		return res;
+	}
+}
@@ -0,0 +1,172 @@
+package DBMS;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Append-only log of the records added to a bitmap index since its snapshot
+// (<col>.db) was written, one (value, ordinal) pair each, kept as log/<col>.log
+// apart from the trace log and the other index files. Loading an index replays
+// the log over the snapshot, so an insert only appends a few bytes per index.
+// Once DBApp.indexLogMergeEntries pairs have been logged the log is set aside
+// (log/<col>.merging.log) and a background thread folds it into a new snapshot;
+// records logged meanwhile go to a fresh log.
+public class IndexLog {
+
+	private static final HashSet<String> merging = new HashSet<String>();
+	private static final ExecutorService merger = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "index-log-merge");
+		t.setDaemon(true);
+		return t;
+	});
+
+	static File directory(String tableName) {
+		return new File(new File(FileManager.directory, tableName), "log");
+	}
+
+	static File file(String tableName, String columnName) {
+		return new File(directory(tableName), columnName + ".log");
+	}
+
+	static File mergingFile(String tableName, String columnName) {
+		return new File(directory(tableName), columnName + ".merging.log");
+	}
+
+	public static synchronized boolean append(String tableName, String columnName, List<String> values,
+			List<Integer> ordinals) {
+		File fl = file(tableName, columnName);
+		fl.getParentFile().mkdirs();
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fl, true)));
+			for (int i = 0; i < values.size(); i++) {
+				out.writeUTF(values.get(i));
+				out.writeInt(ordinals.get(i));
+			}
+			out.close();
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	// Adds the logged records to an index read from its snapshot.
+	public static synchronized void replay(String tableName, String columnName, BitmapIndex index) {
+		replay(mergingFile(tableName, columnName), index);
+		replay(file(tableName, columnName), index);
+	}
+
+	private static void replay(File fl, BitmapIndex index) {
+		if (!fl.exists()) {
+			return;
+		}
+		try {
+			byte[] log = Files.readAllBytes(fl.toPath());
+			ByteArrayInputStream buf = new ByteArrayInputStream(log);
+			DataInputStream in = new DataInputStream(buf);
+			int end = 0;
+			try {
+				while (end < log.length) {
+					String value = in.readUTF();
+					index.insert(value, in.readInt());
+					end = log.length - buf.available();
+				}
+			} catch (EOFException e) {
+				// a pair cut short by a crash; drop it so later appends stay readable
+				RandomAccessFile raf = new RandomAccessFile(fl, "rw");
+				raf.setLength(end);
+				raf.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	// Sets the log aside and starts folding it into a new snapshot. Returns false
+	// while an earlier merge of the same index is still running, or when only the
+	// log of a merge cut short by a shutdown is folded: the current log is then
+	// still there for the next call.
+	public static synchronized boolean merge(String tableName, String columnName) {
+		String key = tableName + File.separator + columnName;
+		if (merging.contains(key)) {
+			return false;
+		}
+		File set = mergingFile(tableName, columnName);
+		boolean leftover = set.exists();
+		if (!leftover && !file(tableName, columnName).renameTo(set)) {
+			return false;
+		}
+		merging.add(key);
+		merger.submit(() -> {
+			try {
+				fold(tableName, columnName);
+			} finally {
+				synchronized (IndexLog.class) {
+					merging.remove(key);
+				}
+			}
+		});
+		return !leftover;
+	}
+
+	private static void fold(String tableName, String columnName) {
+		BitmapIndex index = FileManager.readTableIndex(tableName, columnName);
+		if (index == null) {
+			return;
+		}
+		File set = mergingFile(tableName, columnName);
+		replay(set, index);
+		File tmp = new File(set.getParentFile(), columnName + ".merge.tmp");
+		try {
+			ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(tmp));
+			oos.writeObject(index);
+			oos.close();
+			synchronized (IndexLog.class) {
+				// a full snapshot written meanwhile already holds these records
+				if (!set.exists()) {
+					tmp.delete();
+					return;
+				}
+				Files.move(tmp.toPath(), new File(new File(FileManager.directory, tableName), columnName + ".db").toPath(),
+						StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				set.delete();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			tmp.delete();
+		}
+	}
+
+	// Drops the logs once a full snapshot of the index has been written.
+	public static synchronized void clear(String tableName, String columnName) {
+		file(tableName, columnName).delete();
+		mergingFile(tableName, columnName).delete();
+	}
+
+	// Waits for the merges started so far to finish; a full snapshot does not
+	// need to, since it replaces the logs under the same lock a merge finishes in.
+	public static void await() {
+		try {
+			merger.submit(() -> {
+			}).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,324 @@
+package DBMS;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Indexes held open in memory between DBApp calls, keyed by table and column.
+// Whether a column has an index is answered from the table's metadata, so only
+// indexes that exist are ever read from disk. Inserts update the resident index
+// and only mark it dirty; dirty indexes are written once DBApp.indexFlushBatch
+// updates have accumulated, on DBApp.flush, at shutdown, or when they are
+// evicted. Bitmap indexes are written by appending the new records to their
+// IndexLog rather than rewriting them. Least recently used indexes are evicted once the resident ones
+// exceed DBApp.indexCacheBytes.
+public class IndexRegistry {
+
+	private static final String BITMAP = "bitmap";
+	private static final String HASH = "hash";
+	private static final String TREE = "tree";
+	private static final String SLICED = "sliced";
+
+	private static class Entry {
+		String tableName;
+		String columnName;
+		String kind;
+		Object index;
+		int pendingUpdates;
+		long bytes;
+		// bitmap indexes: records added since the last write, and since the last merge
+		ArrayList<String> values = new ArrayList<String>();
+		ArrayList<Integer> ordinals = new ArrayList<Integer>();
+		int logged;
+	}
+
+	private static final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private static long usedBytes = 0;
+	private static long loads = 0;
+
+	private static String key(String tableName, String columnName, String kind) {
+		return tableName + File.separator + columnName + File.separator + kind;
+	}
+
+	public static BitmapIndex get(String tableName, String columnName) {
+		return (BitmapIndex) get(tableName, columnName, BITMAP);
+	}
+
+	public static HashIndex getHash(String tableName, String columnName) {
+		return (HashIndex) get(tableName, columnName, HASH);
+	}
+
+	public static BPlusTree getTree(String tableName, String columnName) {
+		return (BPlusTree) get(tableName, columnName, TREE);
+	}
+
+	public static BitSlicedIndex getBitSliced(String tableName, String columnName) {
+		return (BitSlicedIndex) get(tableName, columnName, SLICED);
+	}
+
+	private static synchronized Object get(String tableName, String columnName, String kind) {
+		Entry e = entries.get(key(tableName, columnName, kind));
+		if (e == null) {
+			if (!listed(tableName, columnName, kind)) {
+				return null;
+			}
+			Object index;
+			if (HASH.equals(kind)) {
+				index = FileManager.loadTableHashIndex(tableName, columnName);
+			} else if (TREE.equals(kind)) {
+				index = FileManager.loadTableTree(tableName, columnName);
+			} else if (SLICED.equals(kind)) {
+				index = FileManager.loadTableBitSlicedIndex(tableName, columnName);
+			} else {
+				index = FileManager.loadTableIndex(tableName, columnName);
+			}
+			loads++;
+			if (index == null) {
+				return null;
+			}
+			e = new Entry();
+			e.tableName = tableName;
+			e.columnName = columnName;
+			e.kind = kind;
+			e.index = index;
+			admit(e);
+		} else {
+			evict(e);
+		}
+		return e.index;
+	}
+
+	// Whether the table's metadata lists an index of this kind on the column.
+	private static boolean listed(String tableName, String columnName, String kind) {
+		Table t = Catalog.get(tableName);
+		if (t == null) {
+			return false;
+		}
+		if (HASH.equals(kind)) {
+			return t.hashIndexedColumns.contains(columnName);
+		} else if (TREE.equals(kind)) {
+			return t.treeIndexedColumns.contains(columnName);
+		} else if (SLICED.equals(kind)) {
+			return t.bitSlicedColumns.contains(columnName);
+		}
+		if (t.indexedColumns.contains(columnName)) {
+			return true;
+		}
+		for (String[] columns : t.compositeIndexes) {
+			if (Table.compositeName(columns).equals(columnName)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// Registers an index, replacing any resident one, and writes it through.
+	// Used for freshly built indexes and after batch updates.
+	public static void put(String tableName, String columnName, BitmapIndex index) {
+		put(tableName, columnName, BITMAP, index);
+	}
+
+	public static void putHash(String tableName, String columnName, HashIndex index) {
+		put(tableName, columnName, HASH, index);
+	}
+
+	public static void putTree(String tableName, String columnName, BPlusTree index) {
+		put(tableName, columnName, TREE, index);
+	}
+
+	public static void putBitSliced(String tableName, String columnName, BitSlicedIndex index) {
+		put(tableName, columnName, SLICED, index);
+	}
+
+	// Registers a bitmap index the caller has already written.
+	public static void putWritten(String tableName, String columnName, BitmapIndex index) {
+		put(tableName, columnName, BITMAP, index, false);
+	}
+
+	private static void put(String tableName, String columnName, String kind, Object index) {
+		put(tableName, columnName, kind, index, true);
+	}
+
+	private static synchronized void put(String tableName, String columnName, String kind, Object index,
+			boolean writeThrough) {
+		Entry old = entries.remove(key(tableName, columnName, kind));
+		if (old != null) {
+			usedBytes -= old.bytes;
+		}
+		Entry e = new Entry();
+		e.tableName = tableName;
+		e.columnName = columnName;
+		e.kind = kind;
+		e.index = index;
+		if (writeThrough) {
+			snapshot(e);
+		}
+		admit(e);
+	}
+
+	public static synchronized void markDirty(String tableName, String columnName, String value, int ordinal) {
+		Entry e = entries.get(key(tableName, columnName, BITMAP));
+		if (e != null) {
+			e.values.add(value);
+			e.ordinals.add(ordinal);
+			markDirty(tableName, columnName, BITMAP);
+		}
+	}
+
+	public static void markHashDirty(String tableName, String columnName) {
+		markDirty(tableName, columnName, HASH);
+	}
+
+	public static void markTreeDirty(String tableName, String columnName) {
+		markDirty(tableName, columnName, TREE);
+	}
+
+	public static void markBitSlicedDirty(String tableName, String columnName) {
+		markDirty(tableName, columnName, SLICED);
+	}
+
+	private static synchronized void markDirty(String tableName, String columnName, String kind) {
+		Entry e = entries.get(key(tableName, columnName, kind));
+		if (e != null && ++e.pendingUpdates >= DBApp.indexFlushBatch) {
+			write(e);
+			// the index has grown since it was last measured
+			usedBytes -= e.bytes;
+			e.bytes = sizeOf(e.index);
+			usedBytes += e.bytes;
+			evict(e);
+		}
+	}
+
+	private static void admit(Entry e) {
+		e.bytes = sizeOf(e.index);
+		entries.put(key(e.tableName, e.columnName, e.kind), e);
+		usedBytes += e.bytes;
+		evict(e);
+	}
+
+	// Evicts least recently used indexes, writing the dirty ones first, until the
+	// resident indexes fit the budget again. The entry in use is always kept.
+	private static void evict(Entry keep) {
+		Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+		while (usedBytes > DBApp.indexCacheBytes && it.hasNext()) {
+			Entry e = it.next().getValue();
+			if (e == keep || (e.pendingUpdates > 0 && !write(e))) {
+				continue;
+			}
+			it.remove();
+			usedBytes -= e.bytes;
+		}
+	}
+
+	// Writes a freshly built index in full.
+	private static boolean snapshot(Entry e) {
+		if (BITMAP.equals(e.kind)) {
+			return FileManager.storeTableIndex(e.tableName, e.columnName, (BitmapIndex) e.index);
+		}
+		return write(e);
+	}
+
+	private static boolean write(Entry e) {
+		boolean written;
+		if (HASH.equals(e.kind)) {
+			written = FileManager.storeTableHashIndex(e.tableName, e.columnName, (HashIndex) e.index);
+		} else if (TREE.equals(e.kind)) {
+			written = ((BPlusTree) e.index).flush();
+		} else if (SLICED.equals(e.kind)) {
+			written = FileManager.storeTableBitSlicedIndex(e.tableName, e.columnName, (BitSlicedIndex) e.index);
+		} else {
+			written = IndexLog.append(e.tableName, e.columnName, e.values, e.ordinals);
+			if (written) {
+				e.logged += e.values.size();
+				e.values.clear();
+				e.ordinals.clear();
+				if (e.logged >= DBApp.indexLogMergeEntries && IndexLog.merge(e.tableName, e.columnName)) {
+					e.logged = 0;
+				}
+			}
+		}
+		if (written) {
+			e.pendingUpdates = 0;
+		}
+		return written;
+	}
+
+	private static long sizeOf(Object index) {
+		if (index instanceof HashIndex) {
+			return ((HashIndex) index).sizeInBytes();
+		} else if (index instanceof BPlusTree) {
+			return ((BPlusTree) index).sizeInBytes();
+		} else if (index instanceof BitSlicedIndex) {
+			return ((BitSlicedIndex) index).sizeInBytes();
+		}
+		return ((BitmapIndex) index).sizeInBytes();
+	}
+
+	public static synchronized void flush(String tableName) {
+		for (Entry e : entries.values()) {
+			if (e.pendingUpdates > 0 && e.tableName.equals(tableName)) {
+				write(e);
+			}
+		}
+	}
+
+	public static synchronized void flushAll() {
+		for (Entry e : new ArrayList<Entry>(entries.values())) {
+			if (e.pendingUpdates > 0) {
+				write(e);
+			}
+		}
+	}
+
+	public static synchronized boolean isDirty(String tableName, String columnName) {
+		for (Entry e : entries.values()) {
+			if (e.tableName.equals(tableName) && e.columnName.equals(columnName) && e.pendingUpdates > 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public static synchronized boolean isResident(String tableName, String columnName) {
+		for (Entry e : entries.values()) {
+			if (e.tableName.equals(tableName) && e.columnName.equals(columnName)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public static synchronized long usedBytes() {
+		return usedBytes;
+	}
+
+	// Number of index reads from disk since the last resetStats.
+	public static synchronized long getLoads() {
+		return loads;
+	}
+
+	public static synchronized void resetStats() {
+		loads = 0;
+	}
+
+	// Drops a table's resident indexes without writing them, so they are read
+	// again from disk; used to undo a failed bulk load.
+	public static synchronized void discard(String tableName) {
+		Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+		while (it.hasNext()) {
+			Entry e = it.next().getValue();
+			if (e.tableName.equals(tableName)) {
+				it.remove();
+				usedBytes -= e.bytes;
+			}
+		}
+	}
+
+	// Drops every resident index without writing it; used when the database is reset.
+	public static synchronized void clear() {
+		entries.clear();
+		usedBytes = 0;
+	}
+}
@@ -5,6 +5,9 @@ import java.util.ArrayList;
 
 public class Page implements Serializable {
 
+	// the UID of the original class, so pages written with Java serialization still load
+	private static final long serialVersionUID = 5657986611886508260L;
+
 	private ArrayList<String[]> records;
 
 	public Page() {
@@ -12,6 +15,11 @@ public class Page implements Serializable {
 		this.records = new ArrayList<String[]>();
 	}
 
+	Page(ArrayList<String[]> records) {
+		super();
+		this.records = records;
+	}
+
 	public boolean insert(String[] record) {
 		if (records.size() < DBApp.dataPageSize) {
 			this.records.add(record);
@@ -28,22 +36,90 @@ public class Page implements Serializable {
 		ArrayList<String[]> res = new ArrayList<String[]>();
 
 		for (int i = 0; i < this.records.size(); i++) {
-			boolean flag = true;
-			for (int j = 0; j < cond.length; j++) {
-				if (cond[j] != null) {
-					if (!cond[j].equals(this.records.get(i)[j])) {
-						flag = false;
-						break;
-					}
+			if (matches(this.records.get(i), cond))
+				res.add(this.records.get(i));
+		}
+
+		return res;
+	}
+
+	public int count(String[] cond) {
+		int res = 0;
+		for (int i = 0; i < this.records.size(); i++) {
+			if (matches(this.records.get(i), cond))
+				res++;
+		}
+		return res;
+	}
+
+	// Whether a record equals every non-null entry of a condition.
+	static boolean matches(String[] record, String[] cond) {
+		for (int j = 0; j < cond.length; j++) {
+			if (cond[j] != null) {
+				if (!cond[j].equals(record[j])) {
+					return false;
 				}
 			}
-			if (flag)
-				res.add(this.records.get(i));
 		}
+		return true;
+	}
 
+	// Records whose value in column col lies between low and high; a null bound
+	// leaves that side of the range open.
+	public ArrayList<String[]> select(int col, String low, boolean lowInclusive, String high, boolean highInclusive) {
+		ArrayList<String[]> res = new ArrayList<String[]>();
+		for (int i = 0; i < this.records.size(); i++) {
+			if (inRange(this.records.get(i)[col], low, lowInclusive, high, highInclusive))
+				res.add(this.records.get(i));
+		}
 		return res;
 	}
 
+	static boolean inRange(String value, String low, boolean lowInclusive, String high, boolean highInclusive) {
+		if (low != null) {
+			int c = compareValues(value, low);
+			if (c < 0 || (c == 0 && !lowInclusive)) {
+				return false;
+			}
+		}
+		if (high != null) {
+			int c = compareValues(value, high);
+			if (c > 0 || (c == 0 && !highInclusive)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Values are compared as numbers when both parse as one, e.g. gpa or
+	// semester, and as strings otherwise; numbers sort before other strings.
+	static int compareValues(String a, String b) {
+		Double x = toNumber(a);
+		Double y = toNumber(b);
+		if (x != null && y != null) {
+			return Double.compare(x, y);
+		}
+		if (x != null || y != null) {
+			return x != null ? -1 : 1;
+		}
+		return a.compareTo(b);
+	}
+
+	static Double toNumber(String s) {
+		if (s == null || s.isEmpty()) {
+			return null;
+		}
+		char c = s.charAt(0);
+		if (!(c >= '0' && c <= '9') && c != '-' && c != '+' && c != '.') {
+			return null;
+		}
+		try {
+			return Double.parseDouble(s);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
 	public ArrayList<String[]> select(int i) {
 		ArrayList<String[]> res = new ArrayList<String[]>();
 		res.add(this.records.get(i));
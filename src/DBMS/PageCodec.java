@@ -0,0 +1,145 @@
+package DBMS;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+// Binary page layout (big endian):
+//   header    magic:int, version:byte, recordCount:int
+//   slots     recordCount x offset:int, relative to the start of the page
+//   records   fieldCount:varint, then per field a varint length+1 (0 = null)
+//             followed by the UTF-8 bytes of the field
+public class PageCodec {
+
+	static final int MAGIC = 0x44425047; // "DBPG"
+	static final byte VERSION = 1;
+	static final int HEADER_SIZE = 9;
+
+	public static boolean isEncoded(ByteBuffer buf) {
+		return buf.remaining() >= HEADER_SIZE && buf.getInt(buf.position()) == MAGIC;
+	}
+
+	public static byte[] encode(Page p) {
+		ArrayList<String[]> records = p.select();
+		byte[][][] fields = new byte[records.size()][][];
+		int size = HEADER_SIZE + 4 * records.size();
+		for (int i = 0; i < records.size(); i++) {
+			String[] record = records.get(i);
+			fields[i] = new byte[record.length][];
+			size += varIntSize(record.length);
+			for (int j = 0; j < record.length; j++) {
+				if (record[j] == null) {
+					size += 1;
+				} else {
+					fields[i][j] = record[j].getBytes(StandardCharsets.UTF_8);
+					size += varIntSize(fields[i][j].length + 1) + fields[i][j].length;
+				}
+			}
+		}
+
+		ByteBuffer buf = ByteBuffer.allocate(size);
+		buf.putInt(MAGIC);
+		buf.put(VERSION);
+		buf.putInt(records.size());
+		int offset = HEADER_SIZE + 4 * records.size();
+		for (int i = 0; i < records.size(); i++) {
+			buf.putInt(HEADER_SIZE + 4 * i, offset);
+			buf.position(offset);
+			putVarInt(buf, fields[i].length);
+			for (int j = 0; j < fields[i].length; j++) {
+				if (fields[i][j] == null) {
+					putVarInt(buf, 0);
+				} else {
+					putVarInt(buf, fields[i][j].length + 1);
+					buf.put(fields[i][j]);
+				}
+			}
+			offset = buf.position();
+		}
+		return buf.array();
+	}
+
+	// Decodes a page starting at the buffer's position without copying the
+	// buffer; the buffer's position and limit are left untouched.
+	public static Page decode(ByteBuffer buf) {
+		int base = buf.position();
+		checkHeader(buf, base);
+		int count = buf.getInt(base + 5);
+		ArrayList<String[]> records = new ArrayList<String[]>(Math.max(count, DBApp.dataPageSize));
+		for (int i = 0; i < count; i++) {
+			records.add(readRecord(buf, base, i));
+		}
+		return new Page(records);
+	}
+
+	// Decodes a single slot, so point lookups do not pay for the whole page.
+	public static String[] decodeRecord(ByteBuffer buf, int slot) {
+		int base = buf.position();
+		checkHeader(buf, base);
+		if (slot < 0 || slot >= buf.getInt(base + 5)) {
+			throw new IndexOutOfBoundsException("slot " + slot);
+		}
+		return readRecord(buf, base, slot);
+	}
+
+	private static void checkHeader(ByteBuffer buf, int base) {
+		if (buf.getInt(base) != MAGIC) {
+			throw new IllegalArgumentException("Not an encoded page");
+		}
+		if (buf.get(base + 4) != VERSION) {
+			throw new IllegalArgumentException("Unsupported page version: " + buf.get(base + 4));
+		}
+	}
+
+	private static String[] readRecord(ByteBuffer buf, int base, int slot) {
+		int[] pos = { base + buf.getInt(base + HEADER_SIZE + 4 * slot) };
+		String[] record = new String[getVarInt(buf, pos)];
+		for (int j = 0; j < record.length; j++) {
+			int len = getVarInt(buf, pos) - 1;
+			if (len >= 0) {
+				record[j] = readString(buf, pos[0], len);
+				pos[0] += len;
+			}
+		}
+		return record;
+	}
+
+	private static String readString(ByteBuffer buf, int at, int len) {
+		if (buf.hasArray()) {
+			return new String(buf.array(), buf.arrayOffset() + at, len, StandardCharsets.UTF_8);
+		}
+		byte[] b = new byte[len];
+		for (int i = 0; i < len; i++) {
+			b[i] = buf.get(at + i);
+		}
+		return new String(b, StandardCharsets.UTF_8);
+	}
+
+	private static int varIntSize(int v) {
+		int size = 1;
+		while ((v >>>= 7) != 0) {
+			size++;
+		}
+		return size;
+	}
+
+	private static void putVarInt(ByteBuffer buf, int v) {
+		while ((v & ~0x7F) != 0) {
+			buf.put((byte) ((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		buf.put((byte) v);
+	}
+
+	private static int getVarInt(ByteBuffer buf, int[] pos) {
+		int res = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = buf.get(pos[0]++);
+			res |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return res;
+	}
+}
@@ -0,0 +1,74 @@
+package DBMS;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Full-scan results per table, kept in memory only and bounded by an estimate
+// of their heap footprint (DBApp.scanCacheBytes). Least recently used tables
+// are dropped first. Pages are only written through FileManager, and any page
+// write to a table drops its entry, so a hit is served without reading a file.
+public class ScanCache {
+
+	private static class Entry {
+		ArrayList<String[]> records;
+		long bytes;
+	}
+
+	private static final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private static long usedBytes = 0;
+
+	public static synchronized ArrayList<String[]> get(String tableName) {
+		Entry e = entries.get(tableName);
+		return e == null ? null : e.records;
+	}
+
+	public static synchronized void put(String tableName, ArrayList<String[]> records) {
+		invalidate(tableName);
+		long bytes = estimate(records);
+		if (bytes > DBApp.scanCacheBytes) {
+			return;
+		}
+		Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+		while (usedBytes + bytes > DBApp.scanCacheBytes && it.hasNext()) {
+			usedBytes -= it.next().getValue().bytes;
+			it.remove();
+		}
+		Entry e = new Entry();
+		e.records = records;
+		e.bytes = bytes;
+		entries.put(tableName, e);
+		usedBytes += bytes;
+	}
+
+	public static synchronized void invalidate(String tableName) {
+		Entry e = entries.remove(tableName);
+		if (e != null) {
+			usedBytes -= e.bytes;
+		}
+	}
+
+	public static synchronized void clear() {
+		entries.clear();
+		usedBytes = 0;
+	}
+
+	public static synchronized long usedBytes() {
+		return usedBytes;
+	}
+
+	// Rough heap size: array and object headers plus two bytes per char.
+	private static long estimate(ArrayList<String[]> records) {
+		long bytes = 16 + 8L * records.size();
+		for (String[] record : records) {
+			bytes += 16 + 8L * record.length;
+			for (String field : record) {
+				if (field != null) {
+					bytes += 40 + 2L * field.length();
+				}
+			}
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,177 @@
+package DBMS;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+// All pages of a table stored in fixed-size slots of one memory-mapped file.
+// The file starts with a header (magic, slot size, slots per extent) and grows
+// one extent of slots at a time; each extent is mapped on its own so the file
+// is not limited by the 2GB size of a single mapping. A slot holds the length
+// of the encoded page followed by the PageCodec bytes; length 0 marks an empty
+// slot, whose page (if any) lives in the usual per-page file.
+public class SegmentFile {
+
+	static final String FILE_NAME = "pages.seg";
+	static final int MAGIC = 0x44425347; // "DBSG"
+	static final int HEADER_SIZE = 64;
+
+	private static final HashMap<String, SegmentFile> open = new HashMap<String, SegmentFile>();
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final int slotSize;
+	private final int extentSlots;
+	private final ArrayList<MappedByteBuffer> extents = new ArrayList<MappedByteBuffer>();
+
+	private SegmentFile(File fl) throws IOException {
+		boolean created = !fl.exists() || fl.length() < HEADER_SIZE;
+		file = new RandomAccessFile(fl, "rw");
+		channel = file.getChannel();
+		if (created) {
+			slotSize = DBApp.segmentSlotSize;
+			extentSlots = DBApp.segmentExtentSlots;
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(0, MAGIC);
+			header.putInt(4, slotSize);
+			header.putInt(8, extentSlots);
+			channel.write(header, 0);
+		} else {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			channel.read(header, 0);
+			if (header.getInt(0) != MAGIC) {
+				channel.close();
+				throw new IOException("Not a segment file: " + fl);
+			}
+			slotSize = header.getInt(4);
+			extentSlots = header.getInt(8);
+			long existing = (channel.size() - HEADER_SIZE) / ((long) slotSize * extentSlots);
+			for (int i = 0; i < existing; i++) {
+				mapExtent(i);
+			}
+		}
+	}
+
+	public static synchronized SegmentFile get(String tableName) {
+		SegmentFile seg = open.get(tableName);
+		if (seg == null) {
+			File fl = file(tableName);
+			if (!fl.exists()) {
+				return null;
+			}
+			seg = openFile(tableName, fl);
+		}
+		return seg;
+	}
+
+	public static synchronized SegmentFile create(String tableName) {
+		SegmentFile seg = get(tableName);
+		if (seg == null) {
+			File tableDirectory = new File(FileManager.directory, tableName);
+			tableDirectory.mkdirs();
+			seg = openFile(tableName, file(tableName));
+		}
+		return seg;
+	}
+
+	private static SegmentFile openFile(String tableName, File fl) {
+		try {
+			SegmentFile seg = new SegmentFile(fl);
+			open.put(tableName, seg);
+			return seg;
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+
+	static File file(String tableName) {
+		return new File(new File(FileManager.directory, tableName), FILE_NAME);
+	}
+
+	private void mapExtent(int extent) throws IOException {
+		long extentBytes = (long) slotSize * extentSlots;
+		extents.add(channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + extent * extentBytes,
+				extentBytes));
+	}
+
+	// Returns a view positioned at the start of the slot, or null if the slot
+	// lies beyond the allocated extents.
+	private ByteBuffer slot(int pageNumber) {
+		int extent = pageNumber / extentSlots;
+		if (pageNumber < 0 || extent >= extents.size()) {
+			return null;
+		}
+		ByteBuffer buf = extents.get(extent).duplicate();
+		buf.position((pageNumber % extentSlots) * slotSize);
+		buf.limit(buf.position() + slotSize);
+		return buf;
+	}
+
+	public synchronized Page read(int pageNumber) {
+		ByteBuffer buf = slot(pageNumber);
+		if (buf == null) {
+			return null;
+		}
+		int length = buf.getInt();
+		if (length == 0) {
+			return null;
+		}
+		buf.limit(buf.position() + length);
+		return PageCodec.decode(buf.slice());
+	}
+
+	// Stores the page in its slot, allocating new extents as needed. Pages that
+	// do not fit a slot are left to the caller; their slot is cleared so a
+	// stale copy is never read back.
+	public synchronized boolean write(int pageNumber, byte[] encoded) {
+		try {
+			while (pageNumber / extentSlots >= extents.size()) {
+				mapExtent(extents.size());
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+		ByteBuffer buf = slot(pageNumber);
+		if (encoded.length > slotSize - 4) {
+			buf.putInt(0);
+			return false;
+		}
+		buf.putInt(encoded.length);
+		buf.put(encoded);
+		return true;
+	}
+
+	public synchronized int capacity() {
+		return extents.size() * extentSlots;
+	}
+
+	public synchronized void force() {
+		for (MappedByteBuffer m : extents) {
+			m.force();
+		}
+	}
+
+	private synchronized void close() {
+		force();
+		extents.clear();
+		try {
+			channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	public static synchronized void closeAll() {
+		for (SegmentFile seg : open.values()) {
+			seg.close();
+		}
+		open.clear();
+	}
+}
@@ -1,25 +1,40 @@
 package DBMS;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.function.Predicate;
 
 public class Table implements Serializable {
+
+	// the UID of the original class, so tables stored before its fields changed still load
+	private static final long serialVersionUID = -619813885123387244L;
+
 	public String name;
 	public String[] columnsNames;
 	public int pageCount;
 	public int recordsCount;
-	public ArrayList<String> trace;
+	// the trace lives in a TraceLog file; only its most recent entries are kept here
+	transient ArrayList<String> traceTail;
 	public ArrayList<String> indexedColumns;
-	  public ArrayList<String[]> allRecordsCache;
+	public ArrayList<String> hashIndexedColumns;
+	public ArrayList<String> treeIndexedColumns;
+	public ArrayList<String> bitSlicedColumns;
+	public ArrayList<String[]> compositeIndexes;
 
 	public Table(String name, String[] columnsNames) {
 		this.name = name;
 		this.columnsNames = columnsNames;
-		this.trace = new ArrayList<>();
 		this.indexedColumns = new ArrayList<>(); // Initialize the list
-		this.trace.add("Table created name:" + name + ", columnsNames:"
+		this.hashIndexedColumns = new ArrayList<>();
+		this.treeIndexedColumns = new ArrayList<>();
+		this.bitSlicedColumns = new ArrayList<>();
+		this.compositeIndexes = new ArrayList<>();
+		TraceLog.create(name);
+		this.addTrace("Table created name:" + name + ", columnsNames:"
 				+ Arrays.toString(columnsNames));
 	}
 	
@@ -30,28 +45,108 @@ public class Table implements Serializable {
 	    Collections.sort(indexedColumns);
 	    
 	    StringBuilder res = new StringBuilder();
-	    for (String entry : this.trace) {
-	        res.append(entry).append("\n");
-	    }
+	    TraceLog.readAll(name, res);
 	    return res + "Pages Count: " + pageCount + ", Records Count: " + recordsCount +
 	           ", Indexed Columns: " + indexedColumns;
 	}
 	
-	  public ArrayList<String[]> getAllRecords() {
-	        if (allRecordsCache == null) {
-	            allRecordsCache = new ArrayList<>();
-	            for (int i = 0; i < pageCount; i++) {
-	                Page p = FileManager.loadTablePage(name, i);
-	                if (p != null) {
-	                    allRecordsCache.addAll(p.select());
-	                }
-	            }
-	        }
-	        return allRecordsCache;
-	    }
+	// Every record in page order, served from the ScanCache when possible. The
+	// returned list is a copy, so callers may modify it.
+	public ArrayList<String[]> getAllRecords() {
+		ArrayList<String[]> cached = ScanCache.get(name);
+		if (cached == null) {
+			cached = new ArrayList<String[]>();
+			for (int i = 0; i < pageCount; i++) {
+				Page p = FileManager.loadTablePage(name, i);
+				if (p != null) { // Only process non-null pages
+					cached.addAll(p.select());
+				}
+			}
+			ScanCache.put(name, cached);
+		}
+		return new ArrayList<String[]>(cached);
+	}
 	
 	
 
+	// Every record of the table as ordinals. Records are never deleted, so each
+	// ordinal below recordsCount holds one.
+	public CompressedBitmap live() {
+		return CompressedBitmap.range(0, recordsCount);
+	}
+
+	// Records are numbered in table order: every page but the last is full, so
+	// record i lives in page i / dataPageSize at slot i % dataPageSize. Indexes
+	// store these ordinals and fetch and filter read records back from them.
+	static int ordinal(int pageNumber, int slot) {
+		return pageNumber * DBApp.dataPageSize + slot;
+	}
+
+	static int pageOf(int ordinal) {
+		return ordinal / DBApp.dataPageSize;
+	}
+
+	static int slotOf(int ordinal) {
+		return ordinal % DBApp.dataPageSize;
+	}
+
+	// The records at the given ordinals, in ordinal order. Only the pages
+	// holding a selected ordinal are read, each once and in page order.
+	public ArrayList<String[]> fetch(CompressedBitmap ordinals) {
+		return fetch(ordinals, record -> true);
+	}
+
+	// The records at the given ordinals that also satisfy a condition.
+	public ArrayList<String[]> fetch(CompressedBitmap ordinals, Predicate<String[]> cond) {
+		ArrayList<String[]> res = new ArrayList<String[]>();
+		int loaded = -1;
+		ArrayList<String[]> records = null;
+		for (int ordinal : ordinals.toArray()) {
+			int pageNumber = pageOf(ordinal);
+			if (pageNumber >= pageCount) {
+				break;
+			}
+			if (pageNumber != loaded) {
+				Page p = FileManager.loadTablePage(name, pageNumber);
+				records = p == null ? null : p.select();
+				loaded = pageNumber;
+			}
+			int slot = slotOf(ordinal);
+			if (records != null && slot < records.size() && cond.test(records.get(slot))) {
+				res.add(records.get(slot));
+			}
+		}
+		return res;
+	}
+
+	// The ordinals among candidates whose records match a condition, reading
+	// each page holding a candidate once.
+	public CompressedBitmap filter(CompressedBitmap candidates, String[] cond) {
+		return filter(candidates, record -> Page.matches(record, cond));
+	}
+
+	public CompressedBitmap filter(CompressedBitmap candidates, Predicate<String[]> cond) {
+		CompressedBitmap res = new CompressedBitmap();
+		int loaded = -1;
+		ArrayList<String[]> records = null;
+		for (int ordinal : candidates.toArray()) {
+			int pageNumber = pageOf(ordinal);
+			if (pageNumber >= pageCount) {
+				break;
+			}
+			if (pageNumber != loaded) {
+				Page p = FileManager.loadTablePage(name, pageNumber);
+				records = p == null ? null : p.select();
+				loaded = pageNumber;
+			}
+			int slot = slotOf(ordinal);
+			if (records != null && slot < records.size() && cond.test(records.get(slot))) {
+				res.add(ordinal);
+			}
+		}
+		return res;
+	}
+
 	public void addIndexedColumn(String columnName) {
 		if (!indexedColumns.contains(columnName)) {
 			indexedColumns.add(columnName);
@@ -60,6 +155,69 @@ public class Table implements Serializable {
 
 
 
+	public void addHashIndexedColumn(String columnName) {
+		if (!hashIndexedColumns.contains(columnName)) {
+			hashIndexedColumns.add(columnName);
+		}
+	}
+
+
+
+	public void addTreeIndexedColumn(String columnName) {
+		if (!treeIndexedColumns.contains(columnName)) {
+			treeIndexedColumns.add(columnName);
+		}
+	}
+
+
+
+	public void addBitSlicedColumn(String columnName) {
+		if (!bitSlicedColumns.contains(columnName)) {
+			bitSlicedColumns.add(columnName);
+		}
+	}
+
+
+
+	public void addCompositeIndex(String[] columns) {
+		for (String[] existing : compositeIndexes) {
+			if (Arrays.equals(existing, columns)) {
+				return;
+			}
+		}
+		compositeIndexes.add(columns);
+	}
+
+	// The name a composite index is stored under, e.g. major+gpa_composite.
+	static String compositeName(String[] columns) {
+		return String.join("+", columns) + "_composite";
+	}
+
+	// Values are length prefixed so that no two combinations share a key; a null
+	// value gets length -1, which no string has.
+	static String compositeKey(String[] values) {
+		StringBuilder key = new StringBuilder();
+		for (String value : values) {
+			if (value == null) {
+				key.append("-1:");
+			} else {
+				key.append(value.length()).append(':').append(value);
+			}
+		}
+		return key.toString();
+	}
+
+	// The composite key of a record for an index on the given columns.
+	String compositeKeyOf(String[] columns, String[] record) {
+		String[] values = new String[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			values[i] = record[Arrays.asList(columnsNames).indexOf(columns[i])];
+		}
+		return compositeKey(values);
+	}
+
+
+
 	@Override
 	public String toString() {
 		return "Table [name=" + name + ", columnsNames="
@@ -78,10 +236,23 @@ public class Table implements Serializable {
 		FileManager.storeTablePage(this.name, pageCount - 1, current);
 		recordsCount++;
 		long stopTime = System.currentTimeMillis();
-		this.trace.add("Inserted:" + Arrays.toString(record) + ", at page number:" + (pageCount - 1)
+		this.addTrace("Inserted:" + Arrays.toString(record) + ", at page number:" + (pageCount - 1)
 				+ ", execution time (mil):" + (stopTime - startTime));
 	}
 
+	// Number of records matching a condition, counted page by page without
+	// collecting them.
+	public int count(String[] cond) {
+		int res = 0;
+		for (int i = 0; i < pageCount; i++) {
+			Page p = FileManager.loadTablePage(this.name, i);
+			if (p != null) {
+				res += p.count(cond);
+			}
+		}
+		return res;
+	}
+
 	public String[] fixCond(String[] cols, String[] vals) {
 		String[] res = new String[columnsNames.length];
 		for (int i = 0; i < res.length; i++) {
@@ -114,10 +285,86 @@ public class Table implements Serializable {
 		long stopTime = System.currentTimeMillis();
 		tracer += ", Records per page:" + pagesResCount + ", records:" + res.size()
 				+ ", execution time (mil):" + (stopTime - startTime);
-		this.trace.add(tracer);
+		this.addTrace(tracer);
+		return res;
+	}
+
+	// Same as select(cols, vals), but only the records behind the given page,
+	// slot pointers are read and checked against the condition.
+	public ArrayList<String[]> select(String[] cols, String[] vals, int[] pointers) {
+		String[] cond = fixCond(cols, vals);
+		String tracer = "Select condition:" + Arrays.toString(cols) + "->" + Arrays.toString(vals);
+		ArrayList<ArrayList<Integer>> pagesResCount = new ArrayList<ArrayList<Integer>>();
+		ArrayList<String[]> res = new ArrayList<String[]>();
+		long startTime = System.currentTimeMillis();
+		for (int i = 0; i < pointers.length;) {
+			int pageNumber = pointers[i];
+			Page p = FileManager.loadTablePage(this.name, pageNumber);
+			int count = 0;
+			for (; i < pointers.length && pointers[i] == pageNumber; i += 2) {
+				if (p != null && pointers[i + 1] < p.select().size()) {
+					String[] record = p.select().get(pointers[i + 1]);
+					if (Page.matches(record, cond)) {
+						res.add(record);
+						count++;
+					}
+				}
+			}
+			if (count > 0) {
+				ArrayList<Integer> pr = new ArrayList<Integer>();
+				pr.add(pageNumber);
+				pr.add(count);
+				pagesResCount.add(pr);
+			}
+		}
+		long stopTime = System.currentTimeMillis();
+		tracer += ", Records per page:" + pagesResCount + ", records:" + res.size()
+				+ ", execution time (mil):" + (stopTime - startTime);
+		this.addTrace(tracer);
 		return res;
 	}
 
+	// Filtered scan for low < col < high, each bound optional and possibly inclusive.
+	public ArrayList<String[]> selectRange(String colName, String low, boolean lowInclusive, String high,
+			boolean highInclusive) {
+		int col = Arrays.asList(columnsNames).indexOf(colName);
+		String tracer = "Select range condition:" + rangeCondition(colName, low, lowInclusive, high, highInclusive);
+		ArrayList<ArrayList<Integer>> pagesResCount = new ArrayList<ArrayList<Integer>>();
+		ArrayList<String[]> res = new ArrayList<String[]>();
+		long startTime = System.currentTimeMillis();
+		for (int i = 0; i < pageCount && col != -1; i++) {
+			Page p = FileManager.loadTablePage(this.name, i);
+			if (p == null) {
+				continue;
+			}
+			ArrayList<String[]> pRes = p.select(col, low, lowInclusive, high, highInclusive);
+			if (pRes.size() > 0) {
+				ArrayList<Integer> pr = new ArrayList<Integer>();
+				pr.add(i);
+				pr.add(pRes.size());
+				pagesResCount.add(pr);
+				res.addAll(pRes);
+			}
+		}
+		long stopTime = System.currentTimeMillis();
+		tracer += ", Records per page:" + pagesResCount + ", records:" + res.size()
+				+ ", execution time (mil):" + (stopTime - startTime);
+		this.addTrace(tracer);
+		return res;
+	}
+
+	static String rangeCondition(String colName, String low, boolean lowInclusive, String high,
+			boolean highInclusive) {
+		ArrayList<String> parts = new ArrayList<String>();
+		if (low != null) {
+			parts.add(colName + (lowInclusive ? ">=" : ">") + low);
+		}
+		if (high != null) {
+			parts.add(colName + (highInclusive ? "<=" : "<") + high);
+		}
+		return parts.toString();
+	}
+
 	public ArrayList<String[]> select(int pageNumber, int recordNumber) {
 		String tracer = "Select pointer page:" + pageNumber + ", record:" + recordNumber;
 		ArrayList<String[]> res = new ArrayList<String[]>();
@@ -130,33 +377,66 @@ public class Table implements Serializable {
 		long stopTime = System.currentTimeMillis();
 		tracer += ", total output count:" + res.size()
 				+ ", execution time (mil):" + (stopTime - startTime);
-		this.trace.add(tracer);
+		this.addTrace(tracer);
 		return res;
 	}
 
 	public ArrayList<String[]> select() {
-		ArrayList<String[]> res = new ArrayList<String[]>();
 		long startTime = System.currentTimeMillis();
-		for (int i = 0; i < pageCount; i++) {
-			Page p = FileManager.loadTablePage(this.name, i);
-			if (p != null) {  // Only process non-null pages
-				res.addAll(p.select());
-			}
-		}
+		ArrayList<String[]> res = getAllRecords();
 		long stopTime = System.currentTimeMillis();
-		this.trace.add("Select all pages:" + pageCount + ", records:" + recordsCount
+		this.addTrace("Select all pages:" + pageCount + ", records:" + recordsCount
 				+ ", execution time (mil):" + (stopTime - startTime));
 		return res;
 	}
 	
 	
 
-	public String getLastTrace() {
-		return this.trace.get(this.trace.size() - 1);
+	// Tables stored by older versions lack the newer index lists and keep their
+	// trace in the object; the trace is moved to the TraceLog the first time.
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField fields = in.readFields();
+		name = (String) fields.get("name", null);
+		columnsNames = (String[]) fields.get("columnsNames", null);
+		pageCount = fields.get("pageCount", 0);
+		recordsCount = fields.get("recordsCount", 0);
+		indexedColumns = listOrEmpty(fields.get("indexedColumns", null));
+		hashIndexedColumns = listOrEmpty(fields.get("hashIndexedColumns", null));
+		treeIndexedColumns = listOrEmpty(fields.get("treeIndexedColumns", null));
+		bitSlicedColumns = listOrEmpty(fields.get("bitSlicedColumns", null));
+		compositeIndexes = listOrEmpty(fields.get("compositeIndexes", null));
+		if (fields.getObjectStreamClass().getField("trace") == null) {
+			return;
+		}
+		ArrayList<String> trace = listOrEmpty(fields.get("trace", null));
+		if (!TraceLog.file(name).exists()) {
+			for (String entry : trace) {
+				TraceLog.append(name, entry);
+			}
+		}
 	}
 
-	public void invalidateCache() {
-		allRecordsCache = null;
+	@SuppressWarnings("unchecked")
+	private static <T> ArrayList<T> listOrEmpty(Object list) {
+		return list == null ? new ArrayList<T>() : (ArrayList<T>) list;
+	}
+
+	public void addTrace(String entry) {
+		TraceLog.append(name, entry);
+		if (traceTail == null) {
+			traceTail = new ArrayList<String>();
+		}
+		if (traceTail.size() == DBApp.traceTailSize) {
+			traceTail.remove(0);
+		}
+		traceTail.add(entry);
+	}
+
+	public String getLastTrace() {
+		if (traceTail == null || traceTail.isEmpty()) {
+			return TraceLog.readLast(name);
+		}
+		return traceTail.get(traceTail.size() - 1);
 	}
 
 }
@@ -0,0 +1,121 @@
+package DBMS;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+// Append-only, one entry per line trace of every operation on a table, kept
+// next to the table's pages instead of inside the serialized Table. Newlines
+// and backslashes inside an entry are escaped so each entry stays on one line.
+public class TraceLog {
+
+	static final String FILE_NAME = "trace.log";
+
+	static File file(String tableName) {
+		return new File(new File(FileManager.directory, tableName), FILE_NAME);
+	}
+
+	// Starts an empty log for a new table, dropping one left by an earlier table
+	// of the same name.
+	public static synchronized void create(String tableName) {
+		File fl = file(tableName);
+		fl.getParentFile().mkdirs();
+		try {
+			new FileOutputStream(fl, false).close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	// Opens the log for each entry so no file handle stays open between calls.
+	public static synchronized void append(String tableName, String entry) {
+		File fl = file(tableName);
+		fl.getParentFile().mkdirs();
+		try (Writer w = new OutputStreamWriter(new FileOutputStream(fl, true), StandardCharsets.UTF_8)) {
+			w.write(escape(entry));
+			w.write('\n');
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	// Streams the whole log, one entry per line.
+	public static synchronized void readAll(String tableName, StringBuilder res) {
+		File fl = file(tableName);
+		if (!fl.exists()) {
+			return;
+		}
+		try {
+			BufferedReader in = new BufferedReader(
+					new InputStreamReader(new FileInputStream(fl), StandardCharsets.UTF_8));
+			String line;
+			while ((line = in.readLine()) != null) {
+				res.append(unescape(line)).append("\n");
+			}
+			in.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	// Reads the last entry by scanning backwards from the end of the file.
+	public static synchronized String readLast(String tableName) {
+		File fl = file(tableName);
+		if (!fl.exists() || fl.length() == 0) {
+			return null;
+		}
+		try {
+			RandomAccessFile raf = new RandomAccessFile(fl, "r");
+			long end = raf.length() - 1; // skip the trailing newline
+			long start = end;
+			byte[] b = new byte[1];
+			while (start > 0) {
+				raf.seek(start - 1);
+				raf.readFully(b);
+				if (b[0] == '\n') {
+					break;
+				}
+				start--;
+			}
+			byte[] line = new byte[(int) Math.max(0, end - start)];
+			raf.seek(start);
+			raf.readFully(line);
+			raf.close();
+			return unescape(new String(line, StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+
+	private static String escape(String entry) {
+		if (entry.indexOf('\n') < 0 && entry.indexOf('\\') < 0) {
+			return entry;
+		}
+		return entry.replace("\\", "\\\\").replace("\n", "\\n");
+	}
+
+	private static String unescape(String line) {
+		if (line.indexOf('\\') < 0) {
+			return line;
+		}
+		StringBuilder sb = new StringBuilder(line.length());
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (c == '\\' && i + 1 < line.length()) {
+				c = line.charAt(++i);
+				sb.append(c == 'n' ? '\n' : c);
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+}